@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Copying and moving single files of different sizes
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyMoveBenchmark {
+
+    // A small file copied with Files.copy and a large one that goes through the chunked copier
+    @Param({"4096", "67108864"})
+    public long fileSize;
+
+    private Path workDirectory;
+    private String source;
+    private String copyTarget;
+    private String moveA;
+    private String moveB;
+    private boolean movedToB; // Which side of the move pair currently holds the file
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        workDirectory = Files.createTempDirectory("filemanager-bench");
+        source = workDirectory.resolve("source.dat").toString();
+        copyTarget = workDirectory.resolve("copy.dat").toString();
+        moveA = workDirectory.resolve("move-a.dat").toString();
+        moveB = workDirectory.resolve("move-b.dat").toString();
+        TreeGenerator.writeFile(Path.of(source), fileSize);
+        TreeGenerator.writeFile(Path.of(moveA), fileSize);
+        movedToB = false;
+        FileManagerOps.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        FileManagerOps.restoreConsole();
+        TreeGenerator.deleteTree(workDirectory);
+    }
+
+    // Copy the source over the same destination again and again
+    @Benchmark
+    public boolean copyFile() {
+        return FileManagerOps.copyFile(source, copyTarget);
+    }
+
+    // Move the file back and forth between two names in the same directory
+    @Benchmark
+    public boolean moveFile() {
+        boolean moved = movedToB ? FileManagerOps.moveFile(moveB, moveA) : FileManagerOps.moveFile(moveA, moveB);
+        movedToB = !movedToB;
+        return moved;
+    }
+}
+
+/*
+ * Summary:
+ * The CopyMoveBenchmark class measures copying a small and a large file, and renaming a file within a directory.
+ */
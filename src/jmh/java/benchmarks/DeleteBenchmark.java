@@ -0,0 +1,69 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Recursive deletion of a freshly generated tree; every measurement deletes one whole tree
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DeleteBenchmark {
+
+    // Shape of the tree deleted in every iteration
+    @Param("3")
+    public int depth;
+
+    @Param("8")
+    public int fanOut;
+
+    @Param("20")
+    public int filesPerDirectory;
+
+    @Param("0")
+    public long minFileSize;
+
+    @Param("4096")
+    public long maxFileSize;
+
+    private Path workDirectory;
+    private String tree;
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void createWorkDirectory() throws IOException {
+        workDirectory = Files.createTempDirectory("filemanager-bench");
+        FileManagerOps.silenceConsole();
+    }
+
+    // Generate a new tree before each iteration, outside the measured time
+    @Setup(Level.Iteration)
+    public void createTree() throws IOException {
+        Path path = workDirectory.resolve("tree-" + iteration++);
+        new TreeGenerator(depth, fanOut, filesPerDirectory, minFileSize, maxFileSize, 1).generate(path);
+        tree = path.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkDirectory() throws IOException {
+        FileManagerOps.restoreConsole();
+        TreeGenerator.deleteTree(workDirectory);
+    }
+
+    // Delete the whole tree
+    @Benchmark
+    public boolean deleteDirectory() {
+        return FileManagerOps.deleteDirectory(tree);
+    }
+}
+
+/*
+ * Summary:
+ * The DeleteBenchmark class measures the time and allocations of deleting a generated directory tree.
+ */
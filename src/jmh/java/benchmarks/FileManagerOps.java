@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+// JMH does not allow benchmarks in the default package, and classes in a named package cannot refer to the
+// default-package FileManager directly, so its operations are looked up once as method handles.
+// Calls through a static final method handle are inlined by the JIT like a direct call.
+final class FileManagerOps {
+
+    private static final MethodHandle DISPLAY_DIRECTORY_CONTENTS;
+    private static final MethodHandle SEARCH_FILES;
+    private static final MethodHandle COPY_FILE;
+    private static final MethodHandle MOVE_FILE;
+    private static final MethodHandle DELETE_DIRECTORY;
+
+    static {
+        try {
+            Class<?> fileManager = Class.forName("FileManager");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            DISPLAY_DIRECTORY_CONTENTS = lookup.findStatic(fileManager, "displayDirectoryContents",
+                    MethodType.methodType(void.class, String.class));
+            SEARCH_FILES = lookup.findStatic(fileManager, "searchFiles",
+                    MethodType.methodType(List.class, String.class, String.class));
+            COPY_FILE = lookup.findStatic(fileManager, "copyFile",
+                    MethodType.methodType(boolean.class, String.class, String.class));
+            MOVE_FILE = lookup.findStatic(fileManager, "moveFile",
+                    MethodType.methodType(boolean.class, String.class, String.class));
+            DELETE_DIRECTORY = lookup.findStatic(fileManager, "deleteDirectory",
+                    MethodType.methodType(boolean.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Console streams replaced while a benchmark runs
+    private static PrintStream originalOut;
+    private static PrintStream originalErr;
+
+    private FileManagerOps() {
+    }
+
+    // Send FileManager's console messages to a stream that discards them, so terminal output is not measured
+    static synchronized void silenceConsole() {
+        if (originalOut == null) {
+            originalOut = System.out;
+            originalErr = System.err;
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(discard);
+            System.setErr(discard);
+        }
+    }
+
+    // Restore the console streams replaced by silenceConsole
+    static synchronized void restoreConsole() {
+        if (originalOut != null) {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+            originalOut = null;
+            originalErr = null;
+        }
+    }
+
+    static void displayDirectoryContents(String directoryPath) {
+        try {
+            DISPLAY_DIRECTORY_CONTENTS.invokeExact(directoryPath);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> searchFiles(String directoryPath, String searchQuery) {
+        try {
+            return (List<String>) (List<?>) SEARCH_FILES.invokeExact(directoryPath, searchQuery);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean copyFile(String sourcePath, String destinationPath) {
+        try {
+            return (boolean) COPY_FILE.invokeExact(sourcePath, destinationPath);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean moveFile(String sourcePath, String destinationPath) {
+        try {
+            return (boolean) MOVE_FILE.invokeExact(sourcePath, destinationPath);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static boolean deleteDirectory(String directoryPath) {
+        try {
+            return (boolean) DELETE_DIRECTORY.invokeExact(directoryPath);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // FileManager handles its own I/O errors, so anything thrown here is unexpected
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
+
+/*
+ * Summary:
+ * The FileManagerOps class gives the benchmarks access to the FileManager operations through method handles and
+ * lets them silence FileManager's console output while they run.
+ */
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Listing and searching a generated tree that stays unchanged for the whole run
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListAndSearchBenchmark {
+
+    // Shape of the generated tree
+    @Param("4")
+    public int depth;
+
+    @Param("6")
+    public int fanOut;
+
+    @Param("10")
+    public int filesPerDirectory;
+
+    @Param("0")
+    public long minFileSize;
+
+    @Param("16384")
+    public long maxFileSize;
+
+    // Query passed to searchFiles; "file-7" matches one file in every directory
+    @Param("file-7")
+    public String query;
+
+    private Path workDirectory;
+    private String root;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        workDirectory = Files.createTempDirectory("filemanager-bench");
+        Path tree = workDirectory.resolve("tree");
+        new TreeGenerator(depth, fanOut, filesPerDirectory, minFileSize, maxFileSize, 1).generate(tree);
+        root = tree.toString();
+        FileManagerOps.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        FileManagerOps.restoreConsole();
+        TreeGenerator.deleteTree(workDirectory);
+    }
+
+    // List the root directory with sizes and modification times
+    @Benchmark
+    public void listDirectory() {
+        FileManagerOps.displayDirectoryContents(root);
+    }
+
+    // Search the whole tree for file names containing the query
+    @Benchmark
+    public List<String> searchFiles() {
+        return FileManagerOps.searchFiles(root, query);
+    }
+}
+
+/*
+ * Summary:
+ * The ListAndSearchBenchmark class measures the throughput, latency and, with the GC profiler, the allocation
+ * rate of listing a directory and searching a generated tree by file name.
+ */
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// Builds synthetic directory trees for the benchmarks
+final class TreeGenerator {
+
+    // Block of random bytes that file contents are cut from
+    private static final byte[] DATA = new byte[1024 * 1024];
+
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    private final int depth; // Number of directory levels below the root
+    private final int fanOut; // Subdirectories per directory
+    private final int filesPerDirectory;
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final Random random;
+
+    // File sizes are spread log-uniformly between minFileSize and maxFileSize, so most files are small
+    // and a few are large, as in a typical source or home directory. The same seed gives the same tree.
+    TreeGenerator(int depth, int fanOut, int filesPerDirectory, long minFileSize, long maxFileSize, long seed) {
+        if (depth < 0 || fanOut < 0 || filesPerDirectory < 0 || minFileSize < 0 || maxFileSize < minFileSize) {
+            throw new IllegalArgumentException("Invalid tree shape");
+        }
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.filesPerDirectory = filesPerDirectory;
+        this.minFileSize = minFileSize;
+        this.maxFileSize = maxFileSize;
+        this.random = new Random(seed);
+    }
+
+    // Create the tree below root, which must not exist yet; returns the number of files written
+    long generate(Path root) throws IOException {
+        Files.createDirectory(root);
+        return populate(root, depth);
+    }
+
+    // Write the files of one directory and recurse into its subdirectories
+    private long populate(Path directory, int levelsLeft) throws IOException {
+        long files = 0;
+        for (int i = 0; i < filesPerDirectory; i++) {
+            writeFile(directory.resolve("file-" + i + ".dat"), nextSize());
+            files++;
+        }
+        if (levelsLeft > 0) {
+            for (int i = 0; i < fanOut; i++) {
+                Path subdirectory = Files.createDirectory(directory.resolve("dir-" + i));
+                files += populate(subdirectory, levelsLeft - 1);
+            }
+        }
+        return files;
+    }
+
+    // Pick the size of the next file
+    private long nextSize() {
+        if (minFileSize == maxFileSize) {
+            return minFileSize;
+        }
+        double low = Math.log(minFileSize + 1);
+        double high = Math.log(maxFileSize + 1);
+        return (long) Math.exp(low + random.nextDouble() * (high - low)) - 1;
+    }
+
+    // Write a file of the given size with random content
+    static void writeFile(Path file, long size) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long left = size;
+            while (left > 0) {
+                int length = (int) Math.min(left, DATA.length);
+                out.write(DATA, 0, length);
+                left -= length;
+            }
+        }
+    }
+
+    // Remove a benchmark working directory; kept separate from FileManager so cleanup is never measured
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
+
+/*
+ * Summary:
+ * The TreeGenerator class creates reproducible directory trees of a configurable depth, fan-out, number of files
+ * per directory and file size distribution, which the benchmarks use as their working data, and removes them
+ * again afterwards.
+ */
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+public class AsyncLogHandler extends Handler {
+
+    // What publish does when the buffer is full
+    public enum OverflowPolicy {
+        BLOCK, // Wait for the writer to make room; no record is lost
+        DROP_NEWEST, // Discard the record being published
+        DROP_OLDEST // Discard the oldest buffered record to make room
+    }
+
+    // Defaults used when logging.properties does not configure the handler
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final String DEFAULT_TARGET = FileHandler.class.getName();
+
+    // Maximum number of records handed to the target in one batch
+    private static final int BATCH_SIZE = 256;
+
+    private final Handler target; // Handler that formats and writes the records, e.g. a FileHandler
+    private final BlockingQueue<LogRecord> buffer; // Bounded ring buffer between callers and the writer thread
+    private final OverflowPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Create a handler configured from logging.properties (used by LogManager):
+    //   AsyncLogHandler.target         class name of the handler that writes the records
+    //   AsyncLogHandler.capacity       number of records the buffer holds
+    //   AsyncLogHandler.overflowPolicy BLOCK, DROP_NEWEST or DROP_OLDEST
+    //   AsyncLogHandler.level          lowest level that is buffered
+    public AsyncLogHandler() {
+        this(createTarget(property("target", DEFAULT_TARGET)),
+                Integer.parseInt(property("capacity", String.valueOf(DEFAULT_CAPACITY))),
+                OverflowPolicy.valueOf(property("overflowPolicy", OverflowPolicy.BLOCK.name())));
+        setLevel(Level.parse(property("level", Level.ALL.getName())));
+    }
+
+    // Create a handler that buffers up to capacity records in front of target
+    public AsyncLogHandler(Handler target, int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.target = target;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+
+        // Background thread that performs all formatting and I/O
+        this.writer = new Thread(this::drain, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queue a record for the writer thread; formatting of parameterized messages also happens there
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // Infer the caller now: the record works it out from the current thread's stack on first use, which on the
+        // writer thread would name the wrong class and method
+        record.getSourceClassName();
+        switch (policy) {
+            case BLOCK:
+                try {
+                    buffer.put(record);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // Preserve the interrupt; the record is lost
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP_NEWEST:
+                if (!buffer.offer(record)) {
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!buffer.offer(record)) {
+                    if (buffer.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+        }
+    }
+
+    // Return the number of records discarded because the buffer was full
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Flush the target; records still in the buffer are written by the writer thread shortly after
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    // Write all buffered records, stop the writer thread and close the target
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    // Writer loop: move records from the buffer to the target in batches until the handler is closed
+    private void drain() {
+        List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        long reportedDrops = 0;
+        while (true) {
+            try {
+                LogRecord first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return; // Nothing left to write
+                    }
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, BATCH_SIZE - 1);
+                for (LogRecord record : batch) {
+                    target.publish(record);
+                }
+                batch.clear();
+
+                // Leave a trace in the log when records had to be discarded
+                long drops = dropped.get();
+                if (drops > reportedDrops) {
+                    target.publish(new LogRecord(Level.WARNING, "Dropped " + (drops - reportedDrops)
+                            + " log records because the log buffer was full"));
+                    reportedDrops = drops;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                reportError("Failed to write log record", e, ErrorManager.WRITE_FAILURE);
+                batch.clear();
+            }
+        }
+    }
+
+    // Read a property of this handler from logging.properties
+    private static String property(String name, String defaultValue) {
+        String value = LogManager.getLogManager().getProperty(AsyncLogHandler.class.getName() + "." + name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    // Instantiate the target handler by class name
+    private static Handler createTarget(String className) {
+        try {
+            return (Handler) Class.forName(className.trim()).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot create log handler " + className, e);
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The AsyncLogHandler class decouples logging from the calling thread. Records are placed in a bounded ring
+ * buffer and a background thread formats them and passes them to the real handler (by default the FileHandler
+ * configured in logging.properties). When the buffer is full, the configured policy either blocks the caller or
+ * drops the newest or oldest record; dropped records are counted and reported in the log. Callers should log with
+ * parameterized messages so the message text is only built on the writer thread. The caller's class and method are
+ * captured before a record is queued, so formats that include the source still name the logging code.
+ */
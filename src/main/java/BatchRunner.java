@@ -0,0 +1,384 @@
+import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BatchRunner {
+
+    // Default number of worker threads; can be overridden with --threads <n>
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // One parsed line of a batch script
+    private static final class Command {
+        final int line; // Line number in the script, for reporting
+        final String text; // Original text of the line
+        final String name; // Command name, e.g. "copy"
+        final List<String> arguments;
+        final List<Path> reads = new ArrayList<>(); // Paths the command only reads
+        final List<Path> writes = new ArrayList<>(); // Paths the command creates, changes or removes
+        String error; // Parse error, if the line could not be understood
+        boolean succeeded;
+        String output = ""; // Everything the command printed
+        long nanos; // Time the command took to run
+
+        Command(int line, String text, String name, List<String> arguments) {
+            this.line = line;
+            this.text = text;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        // Check whether this command must not run at the same time as, or before, an earlier command
+        boolean dependsOn(Command earlier) {
+            return overlaps(writes, earlier.writes) || overlaps(writes, earlier.reads) || overlaps(reads, earlier.writes);
+        }
+    }
+
+    private final int threads;
+
+    // Create a runner that executes independent commands on the given number of threads
+    public BatchRunner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    // Read the commands from reader, run them and print per-command results and a timing summary.
+    // Returns the number of commands that failed.
+    public int run(BufferedReader reader) throws IOException {
+        List<Command> commands = parse(reader);
+        OutputCapture capture = new OutputCapture();
+        long start = System.nanoTime();
+        execute(commands, capture);
+        long wallNanos = System.nanoTime() - start;
+        return report(commands, capture.sharedOutput(), wallNanos);
+    }
+
+    // Parse a script: one command per line, arguments separated by spaces, double quotes for paths with spaces
+    private static List<Command> parse(BufferedReader reader) throws IOException {
+        List<Command> commands = new ArrayList<>();
+        String text;
+        int line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            String trimmed = text.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue; // Skip blank lines and comments
+            }
+            List<String> words = split(trimmed);
+            Command command = new Command(line, trimmed, words.get(0).toLowerCase(Locale.ROOT),
+                    words.subList(1, words.size()));
+            try {
+                describe(command);
+            } catch (InvalidPathException e) {
+                command.error = "Invalid path: " + e.getMessage();
+            }
+            commands.add(command);
+        }
+        return commands;
+    }
+
+    // Check the arguments of a command and record which paths it reads and writes
+    private static void describe(Command command) {
+        List<String> args = command.arguments;
+        switch (command.name) {
+            case "copy":
+            case "copydir":
+                if (expect(command, 2, "<source> <destination>")) {
+                    command.reads.add(path(args.get(0)));
+                    command.writes.add(path(args.get(1)));
+                }
+                break;
+            case "move":
+            case "movedir":
+                if (expect(command, 2, "<source> <destination>")) {
+                    command.writes.add(path(args.get(0)));
+                    command.writes.add(path(args.get(1)));
+                }
+                break;
+            case "delete":
+            case "mkdir":
+            case "rmdir":
+                if (expect(command, 1, "<path>")) {
+                    command.writes.add(path(args.get(0)));
+                }
+                break;
+            case "search":
+                if (expect(command, 2, "<directory> <query>")) {
+                    command.reads.add(path(args.get(0)));
+                }
+                break;
+            default:
+                command.error = "Unknown command: " + command.name;
+        }
+    }
+
+    // Record a usage error unless the command has the expected number of arguments
+    private static boolean expect(Command command, int count, String usage) {
+        if (command.arguments.size() != count) {
+            command.error = "Usage: " + command.name + " " + usage;
+            return false;
+        }
+        return true;
+    }
+
+    // Run the commands on the worker pool; a command starts once every earlier command it depends on has finished
+    private void execute(List<Command> commands, OutputCapture capture) {
+        // Capture what each command prints, so concurrent commands do not interleave on the console
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        System.setOut(new PrintStream(new CapturingOutputStream(originalOut, capture), true));
+        System.setErr(new PrintStream(new CapturingOutputStream(originalErr, capture), true));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < commands.size(); i++) {
+                Command command = commands.get(i);
+                // Wait for every earlier command that touches an overlapping path
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    if (command.dependsOn(commands.get(j))) {
+                        dependencies.add(futures.get(j));
+                    }
+                }
+                CompletableFuture<Void> ready =
+                        CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]));
+                futures.add(ready.thenRunAsync(() -> runCommand(command, capture), pool));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            pool.shutdown();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+    // Run a single command on the current worker thread and record its result, output and duration
+    private static void runCommand(Command command, OutputCapture capture) {
+        if (command.error != null) {
+            command.output = command.error + System.lineSeparator();
+            return;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        capture.begin(output);
+        long start = System.nanoTime();
+        try {
+            command.succeeded = dispatch(command);
+        } catch (RuntimeException e) {
+            System.err.println("Unexpected error: " + e);
+        } finally {
+            command.nanos = System.nanoTime() - start;
+            capture.end(output);
+            command.output = output.toString(); // Decoded with the same default charset the PrintStream encoded with
+        }
+    }
+
+    // Call the FileManager operation for a command
+    private static boolean dispatch(Command command) {
+        List<String> args = command.arguments;
+        switch (command.name) {
+            case "copy":
+                return FileManager.copyFile(args.get(0), args.get(1));
+            case "move":
+                return FileManager.moveFile(args.get(0), args.get(1));
+            case "delete":
+                return FileManager.deleteFile(args.get(0));
+            case "mkdir":
+                return FileManager.createDirectory(args.get(0));
+            case "rmdir":
+                return FileManager.deleteDirectory(args.get(0));
+            case "copydir":
+                return FileManager.copyDirectory(args.get(0), args.get(1));
+            case "movedir":
+                return FileManager.moveDirectory(args.get(0), args.get(1));
+            case "search":
+                List<String> results = FileManager.searchFiles(args.get(0), args.get(1));
+                results.forEach(System.out::println);
+                System.out.println(results.size() + " matches.");
+                return true;
+            default:
+                throw new IllegalStateException("Unknown command: " + command.name); // Rejected while parsing
+        }
+    }
+
+    // Print the result of every command in script order, then output that could not be given to a single command,
+    // then the timing summary; returns the number of failures
+    private static int report(List<Command> commands, String sharedOutput, long wallNanos) {
+        int failed = 0;
+        long commandNanos = 0;
+        Map<String, long[]> perType = new TreeMap<>(); // Command name -> {count, total nanos}
+        for (Command command : commands) {
+            if (!command.succeeded) {
+                failed++;
+            }
+            commandNanos += command.nanos;
+            long[] totals = perType.computeIfAbsent(command.name, name -> new long[2]);
+            totals[0]++;
+            totals[1] += command.nanos;
+
+            System.out.printf("[line %d] %-6s %9.1f ms  %s%n", command.line, command.succeeded ? "OK" : "FAILED",
+                    command.nanos / 1e6, command.text);
+            printIndented(command.output);
+        }
+        if (!sharedOutput.trim().isEmpty()) {
+            System.out.println("Output of worker threads while several commands were running:");
+            printIndented(sharedOutput);
+        }
+
+        System.out.println();
+        System.out.printf("Commands: %d, succeeded: %d, failed: %d%n", commands.size(), commands.size() - failed, failed);
+        System.out.printf("Wall time: %.1f ms, total command time: %.1f ms%n", wallNanos / 1e6, commandNanos / 1e6);
+        for (Map.Entry<String, long[]> entry : perType.entrySet()) {
+            long[] totals = entry.getValue();
+            System.out.printf("  %-8s %6d commands, average %.1f ms%n", entry.getKey(), totals[0],
+                    totals[1] / 1e6 / totals[0]);
+        }
+        System.out.flush();
+        return failed;
+    }
+
+    // Print the non-blank lines of captured output, indented under their heading
+    private static void printIndented(String output) {
+        for (String outputLine : output.split("\\R")) {
+            if (!outputLine.trim().isEmpty()) {
+                System.out.println("    " + outputLine.replace("\r", ""));
+            }
+        }
+    }
+
+    // Split a line into words; double quotes group words that contain spaces
+    private static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    // Normalize a path so that overlapping paths can be detected
+    private static Path path(String value) {
+        return Paths.get(value).toAbsolutePath().normalize();
+    }
+
+    // Check whether any path in a is the same as, inside, or above any path in b
+    private static boolean overlaps(List<Path> a, List<Path> b) {
+        for (Path x : a) {
+            for (Path y : b) {
+                if (x.startsWith(y) || y.startsWith(x)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Decides which command's buffer receives output. A command's own thread always writes to its buffer. Threads that
+    // run no command, such as the fork-join workers of a parallel search or copy, cannot be traced back to the command
+    // that started their work: their output goes to the running command if only one is running, and otherwise to a
+    // shared buffer that is printed after the per-command results.
+    private static final class OutputCapture {
+        private final ThreadLocal<ByteArrayOutputStream> current = new ThreadLocal<>();
+        private final Set<ByteArrayOutputStream> running = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final ByteArrayOutputStream shared = new ByteArrayOutputStream();
+
+        // Start capturing the output of a command that runs on the current thread
+        synchronized void begin(ByteArrayOutputStream output) {
+            current.set(output);
+            running.add(output);
+        }
+
+        // Stop capturing the output of the command that ran on the current thread
+        synchronized void end(ByteArrayOutputStream output) {
+            current.remove();
+            running.remove(output);
+        }
+
+        // Return the buffer for output written by the current thread, or null if it should go to the console
+        synchronized ByteArrayOutputStream target() {
+            ByteArrayOutputStream output = current.get();
+            if (output != null) {
+                return output;
+            }
+            if (running.isEmpty()) {
+                return null;
+            }
+            return running.size() == 1 ? running.iterator().next() : shared;
+        }
+
+        // Return the output that could not be given to a single command
+        String sharedOutput() {
+            return shared.toString();
+        }
+    }
+
+    // Output stream that sends bytes to the capture buffer chosen for the current thread, or to the console
+    private static final class CapturingOutputStream extends OutputStream {
+        private final PrintStream console;
+        private final OutputCapture capture;
+
+        CapturingOutputStream(PrintStream console, OutputCapture capture) {
+            this.console = console;
+            this.capture = capture;
+        }
+
+        @Override
+        public void write(int b) {
+            ByteArrayOutputStream buffer = capture.target();
+            if (buffer != null) {
+                buffer.write(b);
+            } else {
+                console.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ByteArrayOutputStream buffer = capture.target();
+            if (buffer != null) {
+                buffer.write(bytes, offset, length);
+            } else {
+                console.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            console.flush();
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The BatchRunner class executes scripts of FileManager commands without the interactive menu.
+ * Each line holds one command (copy, move, delete, mkdir, rmdir, copydir, movedir or search). Commands whose paths
+ * do not overlap run concurrently on a worker pool, while a command that touches the same path as an earlier one,
+ * or a path inside or above it, waits until that command has finished. The output of every command is captured
+ * and printed in script order together with its status and duration, followed by a timing summary. Output from
+ * worker threads shared by several concurrently running commands is printed in a separate block.
+ */
@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ContentSearcher {
+
+    // Logger instance to record log messages for the ContentSearcher class
+    private static final Logger logger = Logger.getLogger(ContentSearcher.class.getName());
+
+    // Files larger than this are skipped; can be overridden with -Dfilemanager.grep.maxFileSize=<bytes>
+    public static final long DEFAULT_MAX_FILE_SIZE = Long.getLong("filemanager.grep.maxFileSize", 64L * 1024 * 1024);
+
+    // Files up to this size are read into a per-thread direct buffer; larger files are memory-mapped
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // A file is treated as binary if it contains a NUL byte within this many leading bytes, like grep does
+    private static final int BINARY_CHECK_BYTES = 8192;
+
+    // Bytes of context kept on each side of a match when a line is too long to show in full
+    private static final int SNIPPET_CONTEXT = 80;
+
+    // One matching line
+    public static final class Match {
+        private final Path path;
+        private final long lineNumber;
+        private final String snippet;
+
+        Match(Path path, long lineNumber, String snippet) {
+            this.path = path;
+            this.lineNumber = lineNumber;
+            this.snippet = snippet;
+        }
+
+        // Return the file that contains the match
+        public Path getPath() {
+            return path;
+        }
+
+        // Return the number of the matching line, starting at 1
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        // Return the matching line, shortened around the match if it is long
+        public String getSnippet() {
+            return snippet;
+        }
+
+        // Format the match as path:line:snippet
+        @Override
+        public String toString() {
+            return path + ":" + lineNumber + ":" + snippet;
+        }
+    }
+
+    // Outcome of a content search
+    public static final class Result {
+        private final long filesScanned;
+        private final long filesSkipped;
+        private final long matches;
+
+        Result(long filesScanned, long filesSkipped, long matches) {
+            this.filesScanned = filesScanned;
+            this.filesSkipped = filesSkipped;
+            this.matches = matches;
+        }
+
+        // Return the number of files whose content was searched
+        public long getFilesScanned() {
+            return filesScanned;
+        }
+
+        // Return the number of files skipped because they were binary, too large or unreadable
+        public long getFilesSkipped() {
+            return filesSkipped;
+        }
+
+        // Return the number of matching lines reported
+        public long getMatches() {
+            return matches;
+        }
+    }
+
+    // Per-thread buffer for small files, so reading them allocates nothing
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    // Fork-join pool that lists directories and scans files in parallel
+    private final ForkJoinPool pool;
+    // Optional cache of directory listings; null to always read from disk
+    private final DirectoryCache cache;
+    private final long maxFileSize;
+
+    // Create a searcher that uses the given number of threads, skips files larger than maxFileSize bytes
+    // and takes listings from the given cache
+    public ContentSearcher(int parallelism, long maxFileSize, DirectoryCache cache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.cache = cache;
+        this.maxFileSize = Math.min(maxFileSize, Integer.MAX_VALUE); // A single mapping holds at most 2 GB
+    }
+
+    // Search the files below root (or root itself if it is a file) for lines containing text, compared as UTF-8
+    // bytes. Each match is passed to onMatch as soon as it is found; matches arrive in no particular order, but
+    // onMatch is never called concurrently. The search stops after maxResults matches.
+    public Result search(Path root, String text, long maxResults, Consumer<Match> onMatch) throws IOException {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Search text must not be empty");
+        }
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("maxResults must be at least 1: " + maxResults);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class);
+        Context context = new Context(text.getBytes(StandardCharsets.UTF_8), maxResults, onMatch);
+        if (attributes.isDirectory()) {
+            context.firstVisit(root, attributes);
+            pool.invoke(new DirectoryTask(root, context));
+        } else {
+            pool.invoke(new FileTask(root, attributes.size(), context));
+        }
+        return new Result(context.scanned.get(), context.skipped.get(), context.emitted);
+    }
+
+    // Shut down the worker threads; the searcher cannot be used afterwards
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Shared state of one search: the compiled pattern, the result limit and the counters
+    private static final class Context {
+        final byte[] pattern;
+        final int[] shift = new int[256]; // Boyer-Moore-Horspool bad-character shifts
+        final long maxResults;
+        final Consumer<Match> onMatch;
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet(); // File keys of the directories searched
+        long emitted; // Guarded by this
+        volatile boolean limitReached;
+
+        Context(byte[] pattern, long maxResults, Consumer<Match> onMatch) {
+            this.pattern = pattern;
+            this.maxResults = maxResults;
+            this.onMatch = onMatch;
+            // A byte that does not occur in the pattern lets the window jump by the whole pattern length
+            Arrays.fill(shift, pattern.length);
+            for (int i = 0; i < pattern.length - 1; i++) {
+                shift[pattern[i] & 0xff] = pattern.length - 1 - i;
+            }
+        }
+
+        // Record a directory as searched and return true the first time it is reached. Symbolic links are followed,
+        // so a link back up the tree or a second link to the same directory would otherwise be searched again.
+        boolean firstVisit(Path directory, BasicFileAttributes attributes) {
+            Object key = attributes.fileKey(); // Device and inode where the file system provides them
+            if (key == null) {
+                try {
+                    key = directory.toRealPath();
+                } catch (IOException e) {
+                    key = directory.toAbsolutePath().normalize();
+                }
+            }
+            return visitedDirectories.add(key);
+        }
+
+        // Pass a match to the consumer unless the limit has been reached
+        synchronized void report(Match match) {
+            if (emitted >= maxResults) {
+                limitReached = true;
+                return;
+            }
+            onMatch.accept(match);
+            if (++emitted >= maxResults) {
+                limitReached = true;
+            }
+        }
+    }
+
+    // Fork-join task that lists one directory, forking a task for each subdirectory and each file
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final Context context;
+
+        DirectoryTask(Path directory, Context context) {
+            this.directory = directory;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> subtasks = new ArrayList<>();
+            try {
+                for (DirectoryCache.Entry entry : list(directory)) {
+                    if (context.limitReached) {
+                        break;
+                    }
+                    BasicFileAttributes attributes = entry.getAttributes();
+                    RecursiveAction subtask;
+                    if (attributes.isDirectory()) {
+                        if (!context.firstVisit(entry.getPath(), attributes)) {
+                            continue; // Already searched through another path, or a cycle of links
+                        }
+                        subtask = new DirectoryTask(entry.getPath(), context);
+                    } else if (attributes.isRegularFile()) {
+                        subtask = new FileTask(entry.getPath(), attributes.size(), context);
+                    } else {
+                        continue; // Devices, pipes and broken links have no content to search
+                    }
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // Report the failure and keep searching the rest of the tree
+                String message = e instanceof DirectoryIteratorException ? e.getCause().getMessage() : e.getMessage();
+                System.err.println("Error searching file contents: " + message);
+                logger.log(Level.SEVERE, "Failed to search directory {0} - {1}", new Object[]{directory, message});
+            }
+            for (RecursiveAction subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    // Return the entries of a directory with their attributes, from the cache when it holds the listing.
+    // The walk does not add listings to the cache, so searching a large tree does not watch every directory.
+    private List<DirectoryCache.Entry> list(Path directory) throws IOException {
+        List<DirectoryCache.Entry> cached = cache == null ? null : cache.peek(directory);
+        if (cached != null) {
+            return cached;
+        }
+        List<DirectoryCache.Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                BasicFileAttributes attributes = DirectoryCache.readAttributes(entry);
+                if (attributes != null) {
+                    entries.add(new DirectoryCache.Entry(entry, attributes));
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Fork-join task that searches the content of one file
+    private final class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path file;
+        private final long size;
+        private final Context context;
+
+        FileTask(Path file, long size, Context context) {
+            this.file = file;
+            this.size = size;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            if (context.limitReached || size < context.pattern.length) {
+                return; // Too short to contain the text
+            }
+            if (size > maxFileSize) {
+                context.skipped.incrementAndGet();
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer data;
+                int length;
+                if (size <= READ_BUFFER_SIZE) {
+                    // Small file: one read into the thread's buffer is cheaper than setting up a mapping
+                    data = READ_BUFFER.get();
+                    data.clear();
+                    while (data.hasRemaining() && channel.read(data) >= 0) {
+                        // Keep reading until the file or the buffer ends
+                    }
+                    length = data.position(); // The file may have changed size since it was listed
+                } else {
+                    // Large file: let the kernel page the content in on demand. The listed size may be stale (it can
+                    // come from the cache), so map the current size; mapping past the end would fault on access.
+                    length = (int) Math.min(channel.size(), maxFileSize);
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                }
+                if (isBinary(data, length)) {
+                    context.skipped.incrementAndGet();
+                    return;
+                }
+                scan(data, length);
+                context.scanned.incrementAndGet();
+            } catch (InternalError e) {
+                // A mapped file was truncated while it was being scanned and the access hit a missing page (SIGBUS)
+                context.skipped.incrementAndGet();
+                logger.log(Level.FINE, "Skipped file truncated during the search {0} - {1}",
+                        new Object[]{file, e.getMessage()});
+            } catch (IOException e) {
+                // Unreadable files are skipped like binary ones
+                context.skipped.incrementAndGet();
+                logger.log(Level.FINE, "Skipped unreadable file {0} - {1}", new Object[]{file, e.getMessage()});
+            }
+        }
+
+        // Find every line containing the pattern with Boyer-Moore-Horspool and report each line once
+        private void scan(ByteBuffer data, int length) {
+            byte[] pattern = context.pattern;
+            int[] shift = context.shift;
+            int last = pattern.length - 1;
+            long lineNumber = 1;
+            int lineStart = 0; // Start of the line containing position counted
+            int counted = 0; // Newlines before this position are included in lineNumber
+
+            int position = 0;
+            while (position <= length - pattern.length) {
+                // Compare the window from its last byte backwards
+                int i = last;
+                while (i >= 0 && data.get(position + i) == pattern[i]) {
+                    i--;
+                }
+                if (i >= 0) {
+                    position += shift[data.get(position + last) & 0xff];
+                    continue;
+                }
+
+                // Match: bring the line number up to date and find the end of the line
+                for (; counted < position; counted++) {
+                    if (data.get(counted) == '\n') {
+                        lineNumber++;
+                        lineStart = counted + 1;
+                    }
+                }
+                int lineEnd = position + pattern.length;
+                while (lineEnd < length && data.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                context.report(new Match(file, lineNumber, snippet(data, lineStart, lineEnd, position)));
+                if (context.limitReached) {
+                    return;
+                }
+
+                // Continue after this line; further matches on it would repeat the same line
+                counted = lineEnd;
+                position = lineEnd + 1;
+            }
+        }
+
+        // Decode the matching line, or the part of it around the match if it is long
+        private String snippet(ByteBuffer data, int lineStart, int lineEnd, int matchStart) {
+            int from = Math.max(lineStart, matchStart - SNIPPET_CONTEXT);
+            int to = Math.min(lineEnd, matchStart + context.pattern.length + SNIPPET_CONTEXT);
+            if (to > from && data.get(to - 1) == '\r') {
+                to--; // Drop the carriage return of Windows line endings
+            }
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = data.get(from + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Check the leading bytes of a file for a NUL byte
+    private static boolean isBinary(ByteBuffer data, int length) {
+        int end = Math.min(length, BINARY_CHECK_BYTES);
+        for (int i = 0; i < end; i++) {
+            if (data.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/*
+ * Summary:
+ * The ContentSearcher class finds lines containing a text in all files of a directory tree, like grep -rF.
+ * Directories are listed and files are scanned in parallel fork-join tasks. Small files are read into a reused
+ * direct buffer and larger ones are memory-mapped, and the bytes are searched with the Boyer-Moore-Horspool
+ * algorithm, which skips ahead by up to the length of the text on every mismatch. Binary files and files over a
+ * size limit are skipped, as are files truncated while they are scanned. Symbolic links are followed, but each
+ * directory is searched only once, so link cycles do not repeat matches. Matches are streamed to a callback as
+ * path, line number and snippet.
+ */
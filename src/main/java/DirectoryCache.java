@@ -0,0 +1,518 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DirectoryCache implements AutoCloseable {
+
+    // Logger instance to record log messages for the DirectoryCache class
+    private static final Logger logger = Logger.getLogger(DirectoryCache.class.getName());
+
+    // Default upper bound on the number of cached directory entries; can be overridden with -Dfilemanager.cache.maxEntries=...
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("filemanager.cache.maxEntries", 500_000);
+
+    // Largest directory whose listing is cached; larger ones are streamed from disk every time they are listed.
+    // Can be overridden with -Dfilemanager.cache.maxListingEntries=...
+    public static final int DEFAULT_MAX_LISTING_ENTRIES =
+            Integer.getInteger("filemanager.cache.maxListingEntries", 10_000);
+
+    // One entry of a cached directory listing
+    public static final class Entry {
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        // Return the path of the entry as produced by the directory stream
+        public Path getPath() {
+            return path;
+        }
+
+        // Return the attributes read when the directory was listed (symbolic links are followed when possible)
+        public BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+    }
+
+    // Receives each entry of a listed directory; returns false to stop the listing
+    public interface EntryVisitor {
+        boolean visit(Entry entry) throws IOException;
+    }
+
+    // Cached listing of one directory and the watch key that keeps it coherent
+    private static final class Listing {
+        final Path key; // Absolute, normalized path the listing is cached under
+        final Path directory; // Directory path as given by the caller that read the listing
+        final List<Entry> entries;
+        final WatchKey watchKey;
+
+        Listing(Path key, Path directory, List<Entry> entries, WatchKey watchKey) {
+            this.key = key;
+            this.directory = directory;
+            this.entries = Collections.unmodifiableList(entries);
+            this.watchKey = watchKey;
+        }
+    }
+
+    // A directory being read from disk; callers that miss on the same directory meanwhile wait for its result.
+    // The result is null if the read will not produce a complete listing (too large, stopped early or failed).
+    private static final class Load {
+        final CompletableFuture<Listing> result = new CompletableFuture<>();
+        boolean stale; // Set when the directory changes while it is read; the result is then not cached
+    }
+
+    private final int maxEntries; // Upper bound on the total number of entries in all cached listings
+    private final int maxListingEntries; // Upper bound on the number of entries in a single cached listing
+    private final WatchService watchService;
+    private final Thread watcher;
+    private final LinkedHashMap<Path, Listing> listings = new LinkedHashMap<>(16, 0.75f, true); // Access order for LRU
+    private final Map<Path, Load> loading = new HashMap<>(); // Directories being read from disk, one load per path
+    // Paths with a cached listing below them, by parent directory, so a subtree is found without scanning every listing
+    private final Map<Path, Set<Path>> children = new HashMap<>();
+    // Listings and loads that rely on each watch key. Paths that reach the same directory (e.g. through a symbolic
+    // link) share one key, so a key is only cancelled when none of them needs it any more.
+    private final Map<WatchKey, Set<Object>> watchUsers = new HashMap<>();
+    private int cachedEntries; // Total number of entries in all cached listings
+    private boolean closed;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Create a cache holding at most maxEntries directory entries
+    public DirectoryCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.maxListingEntries = Math.min(maxEntries, DEFAULT_MAX_LISTING_ENTRIES);
+        this.watchService = newWatchService();
+
+        if (watchService != null) {
+            // Background thread that drops listings as soon as the file system reports a change
+            watcher = new Thread(this::watch, "directory-cache-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } else {
+            watcher = null;
+        }
+    }
+
+    // Pass the entries of a directory to visitor, from memory if its listing is cached and unchanged, and otherwise
+    // as the directory is read from disk. A directory that is read to the end and has at most maxListingEntries
+    // entries is cached; larger directories and listings the visitor stops early are never held in memory.
+    // Concurrent misses on the same directory share a single read as long as it may still be cached.
+    public void list(Path directory, EntryVisitor visitor) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        Load load = null;
+        Load inFlight;
+        Listing listing;
+        synchronized (this) {
+            listing = cachedListing(key);
+            inFlight = listing == null ? loading.get(key) : null;
+            if (listing == null && inFlight == null) {
+                load = new Load();
+                loading.put(key, load);
+            }
+        }
+        if (inFlight != null) {
+            // Another thread is reading this directory already; use its listing if it turns out small enough to cache
+            listing = inFlight.result.join();
+        }
+        if (listing != null) {
+            hits.incrementAndGet();
+            for (Entry entry : resolve(listing, directory)) {
+                if (!visitor.visit(entry)) {
+                    return;
+                }
+            }
+            return;
+        }
+        misses.incrementAndGet();
+        read(key, directory, load, visitor);
+    }
+
+    // Return the listing of directory if it is cached, without reading the disk or caching anything, or null.
+    // Walks of whole trees use this, so they reuse listings the user has viewed without watching every directory.
+    public List<Entry> peek(Path directory) {
+        Listing listing;
+        synchronized (this) {
+            listing = cachedListing(directory.toAbsolutePath().normalize());
+        }
+        if (listing == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return resolve(listing, directory);
+    }
+
+    // Drop cached information about a path: its own listing, its subtree and the listing of its parent
+    public synchronized void invalidate(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        invalidateSubtree(key);
+        if (key.getParent() != null) {
+            invalidateListing(key.getParent());
+        }
+    }
+
+    // Drop every listing, stop the watcher thread and release the watch service; later calls read from disk
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Path key : new ArrayList<>(listings.keySet())) {
+                invalidateListing(key);
+            }
+        }
+        if (watchService != null) {
+            try {
+                watchService.close(); // Wakes the watcher thread, which then exits
+                watcher.join();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close directory cache watch service - {0}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Return the number of listings served from memory
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    // Return the number of listings that had to be read from disk
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // Return the number of listings dropped to stay within the size limit
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    // Return the number of directory entries currently held in memory
+    public synchronized int getCachedEntryCount() {
+        return cachedEntries;
+    }
+
+    // Stream a directory from disk to visitor for list(). With a load, the entries are also collected while there
+    // are at most maxListingEntries of them, and a directory read to the end is cached if its watch is still intact.
+    private void read(Path key, Path directory, Load load, EntryVisitor visitor) throws IOException {
+        // Register the watch before reading, so changes made while listing are not missed
+        WatchKey watchKey = load == null ? null : register(key);
+        if (watchKey != null) {
+            synchronized (this) {
+                use(watchKey, load);
+            }
+        } else if (load != null) {
+            stopSharing(key, load); // Cannot be cached, so waiting callers read the directory themselves
+        }
+        List<Entry> entries = watchKey == null ? null : new ArrayList<>();
+        Listing listing = null;
+        try {
+            boolean complete = true;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes = readAttributes(path);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    Entry entry = new Entry(path, attributes);
+                    if (entries != null) {
+                        if (entries.size() < maxListingEntries) {
+                            entries.add(entry);
+                        } else {
+                            entries = null; // Too large to cache; stop collecting and let waiting callers go ahead
+                            stopSharing(key, load);
+                        }
+                    }
+                    if (!visitor.visit(entry)) {
+                        complete = false;
+                        break;
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+
+            if (complete && entries != null) {
+                Listing read = new Listing(key, directory, entries, watchKey);
+                synchronized (this) {
+                    // Cache the listing only if nothing invalidated the directory while it was being read. A key that
+                    // is no longer valid was cancelled after a change, possibly reported under another path to it.
+                    if (!load.stale && !closed && watchKey.isValid()) {
+                        add(read);
+                        listing = read;
+                    }
+                }
+            }
+        } finally {
+            if (load != null) {
+                synchronized (this) {
+                    loading.remove(key, load);
+                    if (watchKey != null) {
+                        release(watchKey, load);
+                    }
+                }
+                load.result.complete(listing); // Does nothing if the load already stopped sharing its read
+            }
+        }
+    }
+
+    // Stop other callers from waiting for a load that will not produce a listing
+    private void stopSharing(Path key, Load load) {
+        synchronized (this) {
+            loading.remove(key, load);
+        }
+        load.result.complete(null);
+    }
+
+    // Register a directory with the watch service, or return null if it cannot be watched
+    private WatchKey register(Path key) {
+        if (watchService == null) {
+            return null;
+        }
+        try {
+            return key.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+            // Without a watch the listing could go stale (e.g. watch limit reached), so it is not cached
+            logger.log(Level.FINE, "Not caching directory {0} - {1}", new Object[]{key, e.getMessage()});
+            return null;
+        }
+    }
+
+    // Return the cached listing under key, dropping it if its watch has been cancelled in the meantime
+    private Listing cachedListing(Path key) {
+        Listing listing = listings.get(key);
+        if (listing != null && !listing.watchKey.isValid()) {
+            invalidateListing(key);
+            return null;
+        }
+        return listing;
+    }
+
+    // Add a listing to the cache and evict the least recently used listings if it is now too large
+    private void add(Listing listing) {
+        Listing previous = listings.put(listing.key, listing);
+        if (previous != null) {
+            cachedEntries -= previous.entries.size();
+            release(previous.watchKey, previous);
+        }
+        cachedEntries += listing.entries.size();
+        use(listing.watchKey, listing);
+        index(listing.key);
+        evict();
+    }
+
+    // Drop the listings of a directory and of every directory below it
+    private void invalidateSubtree(Path key) {
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(key);
+        while (!pending.isEmpty()) {
+            Path path = pending.pop();
+            removeListing(path);
+            Set<Path> below = children.remove(path);
+            if (below != null) {
+                pending.addAll(below);
+            }
+        }
+        unindex(key);
+        // Loads in progress are few (at most one per thread), so they are simply scanned
+        Iterator<Map.Entry<Path, Load>> iterator = loading.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Load> entry = iterator.next();
+            if (entry.getKey().startsWith(key)) {
+                entry.getValue().stale = true;
+                iterator.remove();
+            }
+        }
+    }
+
+    // Drop the listing of a single directory (not its subtree)
+    private void invalidateListing(Path key) {
+        if (removeListing(key) != null) {
+            unindex(key);
+        }
+        Load load = loading.remove(key);
+        if (load != null) {
+            load.stale = true;
+        }
+    }
+
+    // Remove a listing and stop watching its directory unless another listing or load needs the same watch key
+    private Listing removeListing(Path key) {
+        Listing listing = listings.remove(key);
+        if (listing != null) {
+            cachedEntries -= listing.entries.size();
+            release(listing.watchKey, listing);
+        }
+        return listing;
+    }
+
+    // Record that a cached listing exists at key under each of its ancestors
+    private void index(Path key) {
+        Path child = key;
+        Path parent = key.getParent();
+        while (parent != null && children.computeIfAbsent(parent, path -> new HashSet<>()).add(child)) {
+            child = parent;
+            parent = parent.getParent();
+        }
+    }
+
+    // Remove key from the parent index once neither a listing nor a listing below it remains there
+    private void unindex(Path key) {
+        Path child = key;
+        while (!listings.containsKey(child) && !children.containsKey(child)) {
+            Path parent = child.getParent();
+            Set<Path> siblings = parent == null ? null : children.get(parent);
+            if (siblings == null) {
+                return;
+            }
+            siblings.remove(child);
+            if (!siblings.isEmpty()) {
+                return;
+            }
+            children.remove(parent);
+            child = parent;
+        }
+    }
+
+    // Remove the least recently used listings until the cache is within its size limit
+    private void evict() {
+        Iterator<Map.Entry<Path, Listing>> iterator = listings.entrySet().iterator();
+        while (cachedEntries > maxEntries && iterator.hasNext()) {
+            Listing listing = iterator.next().getValue();
+            iterator.remove();
+            cachedEntries -= listing.entries.size();
+            release(listing.watchKey, listing);
+            unindex(listing.key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Record that a listing or load relies on a watch key
+    private void use(WatchKey watchKey, Object user) {
+        watchUsers.computeIfAbsent(watchKey, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(user);
+    }
+
+    // Record that a listing or load no longer relies on a watch key, and cancel the key once nothing does
+    private void release(WatchKey watchKey, Object user) {
+        Set<Object> users = watchUsers.get(watchKey);
+        if (users != null) {
+            users.remove(user);
+            if (!users.isEmpty()) {
+                return;
+            }
+            watchUsers.remove(watchKey);
+        }
+        watchKey.cancel(); // Nothing cached for this directory, so there is nothing to keep coherent
+    }
+
+    // Process watch events until the cache is closed
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            List<WatchEvent<?>> events = key.pollEvents();
+            synchronized (this) {
+                // The key reports one path, but every path that reached the directory through it is affected
+                Set<Path> directories = new HashSet<>();
+                directories.add(((Path) key.watchable()).toAbsolutePath().normalize());
+                Set<Object> users = watchUsers.get(key);
+                if (users != null) {
+                    for (Object user : users) {
+                        if (user instanceof Listing) {
+                            directories.add(((Listing) user).key);
+                        } else {
+                            ((Load) user).stale = true; // The directory changed while it was being read
+                        }
+                    }
+                }
+                for (Path directory : directories) {
+                    for (WatchEvent<?> event : events) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost, so nothing below this directory can be trusted
+                            invalidateSubtree(directory);
+                        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            invalidateSubtree(directory.resolve((Path) event.context())); // Deleted or renamed away
+                        }
+                    }
+                    // A changed entry also changes the directory's own modification time, which its parent lists
+                    invalidateListing(directory);
+                    if (directory.getParent() != null) {
+                        invalidateListing(directory.getParent());
+                    }
+                }
+                // The listings are gone, so stop watching until the directory is read again
+                watchUsers.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    // Open the watch service, or return null if the file system cannot report changes (the cache then stays empty)
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.log(Level.WARNING, "Directory cache disabled, no watch service available - {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Re-root cached entries onto the directory path the caller used, so printed paths match a direct listing
+    private static List<Entry> resolve(Listing listing, Path directory) {
+        if (directory.equals(listing.directory)) {
+            return listing.entries;
+        }
+        List<Entry> resolved = new ArrayList<>(listing.entries.size());
+        for (Entry entry : listing.entries) {
+            resolved.add(new Entry(directory.resolve(entry.path.getFileName()), entry.attributes));
+        }
+        return resolved;
+    }
+
+    // Read the attributes of an entry, following symbolic links and falling back to the link itself if it is broken.
+    // Returns null if the entry disappeared after it was listed.
+    static BasicFileAttributes readAttributes(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException gone) {
+                return null;
+            }
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The DirectoryCache class keeps recently used directory listings, together with the attributes of every entry,
+ * in memory. The total number of cached entries is bounded and the least recently used listings are evicted first.
+ * Only list() adds listings: it streams a missed directory to its caller as it is read and caches it only if it was
+ * read to the end and holds at most maxListingEntries entries, so a huge directory is never kept in memory.
+ * Concurrent misses on one directory share a single read; tree walks use peek() and never fill the cache. Every
+ * cached directory is registered with a WatchService, and a background thread drops listings as soon as the file
+ * system reports a change, including listings cached under other paths to the same directory; FileManager also
+ * invalidates affected listings directly after its own operations. Listings are indexed
+ * by parent directory so a subtree is invalidated without scanning the cache. Hit, miss and eviction counters show
+ * how effective the cache is, and close() releases the watch service and its thread.
+ */
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DirectoryCopier {
+
+    // Default number of copy threads; can be overridden with -Dfilemanager.copy.threads=<n>
+    public static final int DEFAULT_THREADS = Integer.getInteger("filemanager.copy.threads", 4);
+
+    // Prefix of per-device overrides, e.g. -Dfilemanager.copy.threads./dev/nvme0n1p2=16
+    private static final String DEVICE_THREADS_PROPERTY = "filemanager.copy.threads.";
+
+    // Small files are grouped into tasks of up to this many bytes or files
+    private static final long BATCH_BYTES = 8 * 1024 * 1024;
+    private static final int BATCH_FILES = 256;
+
+    // Maximum number of individual failures attached to the exception thrown at the end of a copy
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    // Outcome of a directory copy
+    public static final class Result {
+        private final long directories;
+        private final long files;
+        private final long bytes;
+
+        Result(long directories, long files, long bytes) {
+            this.directories = directories;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        // Return the number of directories created
+        public long getDirectories() {
+            return directories;
+        }
+
+        // Return the number of files copied
+        public long getFiles() {
+            return files;
+        }
+
+        // Return the number of bytes copied
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // A file found by the walk, relative to the source root
+    private static final class FileEntry {
+        final Path relativePath;
+        final BasicFileAttributes attributes;
+
+        FileEntry(Path relativePath, BasicFileAttributes attributes) {
+            this.relativePath = relativePath;
+            this.attributes = attributes;
+        }
+    }
+
+    private final int threads;
+    private final FileCopier fileCopier;
+
+    // Create a copier that copies files on the given number of threads and hands large files to fileCopier
+    public DirectoryCopier(int threads, FileCopier fileCopier) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.threads = threads;
+        this.fileCopier = fileCopier;
+    }
+
+    // Return the number of copy threads configured for the device holding the given path
+    public static int threadsFor(Path path) {
+        try {
+            // Look up the closest existing ancestor, since the destination may not exist yet
+            Path existing = path.toAbsolutePath();
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing != null) {
+                String name = Files.getFileStore(existing).name();
+                return Integer.getInteger(DEVICE_THREADS_PROPERTY + name, DEFAULT_THREADS);
+            }
+        } catch (IOException e) {
+            // Fall back to the default below
+        }
+        return DEFAULT_THREADS;
+    }
+
+    // Copy the tree below source to destination, replacing existing files. The source is walked once,
+    // all destination directories are created up front and files are copied in batches on a bounded pool.
+    public Result copy(Path source, Path destination) throws IOException {
+        if (destination.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())) {
+            throw new IOException("Cannot copy a directory into itself: " + destination);
+        }
+        List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+
+        // Walk the source tree once, recording directories in pre-order and files with their attributes
+        List<Path> directories = new ArrayList<>();
+        List<FileEntry> files = new ArrayList<>();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                directories.add(source.relativize(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(new FileEntry(source.relativize(file), attrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                failures.add(exc); // Skip unreadable entries and report them at the end
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Create the destination directories before any file is copied, parents first
+        for (Path directory : directories) {
+            Files.createDirectories(destination.resolve(directory));
+        }
+
+        // Copy the files in batches on a bounded thread pool
+        AtomicLong copiedFiles = new AtomicLong();
+        AtomicLong copiedBytes = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<FileEntry> batch : batches(files)) {
+                futures.add(pool.submit(() -> {
+                    for (FileEntry file : batch) {
+                        try {
+                            copyFile(source.resolve(file.relativePath), destination.resolve(file.relativePath),
+                                    file.attributes);
+                            copiedFiles.incrementAndGet();
+                            copiedBytes.addAndGet(file.attributes.size());
+                        } catch (IOException e) {
+                            failures.add(e); // Keep copying the rest of the batch
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Directory copy interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Directory copy failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            IOException exception = new IOException(failures.size() + " entries could not be copied, first: "
+                    + failures.get(0).getMessage());
+            for (IOException failure : failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES))) {
+                exception.addSuppressed(failure);
+            }
+            throw exception;
+        }
+        return new Result(directories.size(), copiedFiles.get(), copiedBytes.get());
+    }
+
+    // Copy a single file; large regular files go through the chunked copier, everything else through Files.copy
+    private void copyFile(Path source, Path destination, BasicFileAttributes attributes) throws IOException {
+        if (attributes.isRegularFile() && attributes.size() > BATCH_BYTES) {
+            fileCopier.copy(source, destination);
+        } else {
+            // Symbolic links are copied as links, like the walk reported them
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    // Group files into tasks: large files on their own, small files together up to the batch limits
+    private static List<List<FileEntry>> batches(List<FileEntry> files) {
+        List<List<FileEntry>> batches = new ArrayList<>();
+        List<FileEntry> current = new ArrayList<>();
+        long currentBytes = 0;
+        for (FileEntry file : files) {
+            long size = file.attributes.size();
+            if (size > BATCH_BYTES) {
+                batches.add(Collections.singletonList(file));
+                continue;
+            }
+            current.add(file);
+            currentBytes += size;
+            if (currentBytes >= BATCH_BYTES || current.size() >= BATCH_FILES) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+}
+
+/*
+ * Summary:
+ * The DirectoryCopier class copies whole directory trees. It walks the source once, creates every destination
+ * directory up front and then copies files on a fixed-size thread pool. Small files are grouped into batches so
+ * each task does a meaningful amount of work, while large files get their own task and go through FileCopier.
+ * The number of threads can be tuned per device through system properties keyed by the file store name.
+ */
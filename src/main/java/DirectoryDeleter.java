@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DirectoryDeleter {
+
+    // Logger instance to record log messages for the DirectoryDeleter class
+    private static final Logger logger = Logger.getLogger(DirectoryDeleter.class.getName());
+
+    // Default number of delete threads; can be overridden with -Dfilemanager.delete.threads=<n>
+    public static final int DEFAULT_THREADS = Integer.getInteger("filemanager.delete.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Name prefix of directories waiting to be purged in the background, and the full name pattern they follow
+    private static final String TRASH_PREFIX = ".filemanager-trash-";
+    private static final Pattern TRASH_NAME = Pattern.compile(Pattern.quote(TRASH_PREFIX)
+            + "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    // Marker file written into a trash directory before anything is moved into it; only directories that have it
+    // are ever purged by a sweep, so a user directory with a similar name is never touched
+    private static final String TRASH_MARKER = ".filemanager-trash";
+
+    // Fork-join pool that deletes sibling subtrees at the same time
+    private final ForkJoinPool pool;
+
+    // Single background thread that purges trashed directories one after another. It is not a daemon thread, so
+    // the JVM does not stop in the middle of a purge, and it exits after a second without work.
+    private final ThreadPoolExecutor purger = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "directory-purger"));
+
+    // Trash directories queued or being purged, so a sweep does not queue them twice
+    private final Set<Path> purging = ConcurrentHashMap.newKeySet();
+
+    // Create a deleter that uses the given number of threads
+    public DirectoryDeleter(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.pool = new ForkJoinPool(threads);
+        purger.allowCoreThreadTimeOut(true);
+    }
+
+    // Delete root and everything below it, deleting sibling subtrees in parallel.
+    // Symbolic links are deleted, never followed; a root that is not a directory is deleted like a file.
+    // Returns the number of files and directories deleted, including root.
+    public long delete(Path root) throws IOException {
+        LongAdder deleted = new LongAdder();
+        BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isDirectory()) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+                if (stream instanceof SecureDirectoryStream) {
+                    // Delete entries relative to the open directory, so paths are not resolved again for every file
+                    pool.invoke(new SecureDeleteTask((SecureDirectoryStream<Path>) stream, deleted));
+                } else {
+                    pool.invoke(new PathDeleteTask(root, stream, deleted));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+        }
+        Files.delete(root);
+        return deleted.sum() + 1;
+    }
+
+    // Move root into a new hidden trash directory next to it and purge that directory in the background.
+    // Returns as soon as the move is done; the move keeps the data on the same file system.
+    // Trash directories left next to root by an earlier run that did not finish its purge are purged as well.
+    public Path deleteInBackground(Path root) throws IOException {
+        if (root.getFileName() == null) {
+            throw new FileSystemException(root.toString(), null, "Cannot move a file system root to the trash");
+        }
+        Path trash = root.resolveSibling(TRASH_PREFIX + UUID.randomUUID());
+        Files.createDirectory(trash);
+        try {
+            // Mark the directory as trash before moving root in, so a sweep never purges a directory it did not create
+            Files.write(trash.resolve(TRASH_MARKER), root.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW);
+            Files.move(root, trash.resolve(root.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                delete(trash); // Holds at most the marker, since root was not moved
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        purge(trash);
+        sweep(trash.toAbsolutePath().getParent());
+        return trash;
+    }
+
+    // Stop accepting background deletions and wait until the queued purges have finished
+    public void shutdown() {
+        purger.shutdown();
+        try {
+            while (!purger.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.log(Level.INFO, "Still purging trashed directories before exit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Give up waiting; leftovers are swept by a later run
+        }
+    }
+
+    // Queue a trash directory for deletion on the purger thread, unless it is queued already
+    private void purge(Path trash) {
+        Path key = trash.toAbsolutePath().normalize();
+        if (!purging.add(key)) {
+            return;
+        }
+        purger.execute(() -> {
+            try {
+                delete(trash);
+                logger.log(Level.INFO, "Purged trashed directory {0}", trash);
+            } catch (NoSuchFileException e) {
+                // Already purged, e.g. by another process that swept the same directory
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to purge trashed directory {0} - {1}",
+                        new Object[]{trash, e.getMessage()});
+            } finally {
+                purging.remove(key);
+            }
+        });
+    }
+
+    // Queue every leftover trash directory in the given directory for purging. Only directories with the exact trash
+    // name and the marker file written by deleteInBackground are purged.
+    private void sweep(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                entry -> TRASH_NAME.matcher(entry.getFileName().toString()).matches())) {
+            for (Path entry : stream) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                        && Files.isRegularFile(entry.resolve(TRASH_MARKER), LinkOption.NOFOLLOW_LINKS)) {
+                    purge(entry);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // Leftovers are only a matter of disk space; the next background delete tries again
+            logger.log(Level.WARNING, "Failed to look for leftover trash in {0} - {1}",
+                    new Object[]{directory, e.getMessage()});
+        }
+    }
+
+    // Join every forked subtask, keeping the first failure (the given one, if any) and attaching later ones to it
+    private static Exception joinAll(List<? extends ForkJoinTask<?>> subtasks, Exception failure) {
+        for (ForkJoinTask<?> subtask : subtasks) {
+            try {
+                subtask.join();
+            } catch (RuntimeException e) {
+                failure = firstFailure(failure, e);
+            }
+        }
+        return failure;
+    }
+
+    // Return the first of two failures, with the second attached to it as suppressed
+    private static Exception firstFailure(Exception first, Exception next) {
+        if (first == null) {
+            return next;
+        }
+        if (first != next) {
+            first.addSuppressed(next);
+        }
+        return first;
+    }
+
+    // Turn a failure into an unchecked exception that a fork-join task can throw; delete() unwraps it again
+    private static RuntimeException unchecked(Exception failure) {
+        return failure instanceof IOException ? new UncheckedIOException((IOException) failure)
+                : (RuntimeException) failure;
+    }
+
+    // Delete the entries of one directory through a SecureDirectoryStream and fork a task per subdirectory
+    private static final class SecureDeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final SecureDirectoryStream<Path> parent; // Open parent directory, or the directory itself for the root
+        private final Path name; // Name of the directory within parent, or null for the root
+        private final LongAdder deleted; // Number of entries deleted so far
+
+        SecureDeleteTask(SecureDirectoryStream<Path> directory, LongAdder deleted) {
+            this(directory, null, deleted);
+        }
+
+        SecureDeleteTask(SecureDirectoryStream<Path> parent, Path name, LongAdder deleted) {
+            this.parent = parent;
+            this.name = name;
+            this.deleted = deleted;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (name == null) {
+                    deleteEntries(parent);
+                } else {
+                    try (SecureDirectoryStream<Path> directory = parent.newDirectoryStream(name,
+                            LinkOption.NOFOLLOW_LINKS)) {
+                        deleteEntries(directory);
+                    }
+                    parent.deleteDirectory(name); // Now empty
+                    deleted.increment();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Delete the files of a directory and the subdirectories in parallel subtasks
+        private void deleteEntries(SecureDirectoryStream<Path> directory) throws IOException {
+            List<SecureDeleteTask> subtasks = new ArrayList<>();
+            Exception failure = null;
+            try {
+                deleteFiles(directory, subtasks);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+            // The stream must stay open until every forked subtask has used it, even after a failure
+            failure = joinAll(subtasks, failure);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+        }
+
+        // Unlink the files of a directory and fork a subtask for every subdirectory, adding it to subtasks
+        private void deleteFiles(SecureDirectoryStream<Path> directory, List<SecureDeleteTask> subtasks)
+                throws IOException {
+            for (Path entry : directory) {
+                Path entryName = entry.getFileName();
+                try {
+                    // Most entries are files, so try the unlink first and only stat when it fails
+                    directory.deleteFile(entryName);
+                    deleted.increment();
+                } catch (NoSuchFileException e) {
+                    // Already gone
+                } catch (IOException e) {
+                    BasicFileAttributes attributes = directory.getFileAttributeView(entryName,
+                            BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).readAttributes();
+                    if (!attributes.isDirectory()) {
+                        throw e;
+                    }
+                    SecureDeleteTask subtask = new SecureDeleteTask(directory, entryName, deleted);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            }
+        }
+    }
+
+    // Path-based fallback for platforms without SecureDirectoryStream
+    private static final class PathDeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final DirectoryStream<Path> openStream; // Already opened stream for the root, otherwise null
+        private final LongAdder deleted; // Number of entries deleted so far
+
+        PathDeleteTask(Path directory, DirectoryStream<Path> openStream, LongAdder deleted) {
+            this.directory = directory;
+            this.openStream = openStream;
+            this.deleted = deleted;
+        }
+
+        @Override
+        protected void compute() {
+            List<PathDeleteTask> subtasks = new ArrayList<>();
+            Exception failure = null;
+            try (DirectoryStream<Path> stream = openStream != null ? openStream : Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        PathDeleteTask subtask = new PathDeleteTask(entry, null, deleted);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else if (Files.deleteIfExists(entry)) {
+                        deleted.increment();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+            // Wait for every forked subtask, even after a failure, and remove the subdirectories they emptied
+            for (PathDeleteTask subtask : subtasks) {
+                try {
+                    subtask.join();
+                    Files.delete(subtask.directory);
+                    deleted.increment();
+                } catch (IOException | RuntimeException e) {
+                    failure = firstFailure(failure, e);
+                }
+            }
+            if (failure != null) {
+                throw unchecked(failure);
+            }
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The DirectoryDeleter class deletes large directory trees. Sibling subtrees are deleted in parallel fork-join
+ * tasks, and on platforms with SecureDirectoryStream every entry is deleted relative to its open parent directory,
+ * so no path is resolved again; files are unlinked directly and only entries that fail are checked for being a
+ * directory. Every forked subtask is joined before its parent's stream closes, even when a sibling fails.
+ * deleteInBackground moves a tree into a new hidden trash directory, marked with a marker file before the move, and
+ * purges it on a background thread, so callers do not wait for the deletion; shutdown() waits for queued purges.
+ * Trash left by an interrupted run is swept up by the next background delete in the same directory; only
+ * directories with the trash name and the marker are swept, never user directories that merely look alike.
+ */
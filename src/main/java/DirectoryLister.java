@@ -0,0 +1,286 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.*;
+
+public class DirectoryLister {
+
+    // Order of the listed entries; sizes and times are listed largest and newest first
+    public enum SortOrder {
+        NONE, // Directory order, printed while the directory is read
+        NAME,
+        SIZE,
+        MODIFIED
+    }
+
+    // Size of the output buffer; a listing is written to the console in blocks of this many characters
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Column widths of the listing, matching the original "%-20s %-10d %-20s" layout
+    private static final int NAME_WIDTH = 20;
+    private static final int SIZE_WIDTH = 10;
+
+    // Name, size and modification time of an entry; all a listing line needs
+    private static final class Line {
+        final String name;
+        final long size;
+        final long modified; // Milliseconds since the epoch
+
+        Line(String name, long size, long modified) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final Comparator<Line> BY_NAME = Comparator.comparing(line -> line.name);
+    private static final Comparator<Line> BY_SIZE = Comparator.<Line>comparingLong(line -> line.size).reversed()
+            .thenComparing(BY_NAME);
+    private static final Comparator<Line> BY_MODIFIED = Comparator.<Line>comparingLong(line -> line.modified)
+            .reversed().thenComparing(BY_NAME);
+
+    private final DirectoryCache cache; // Small directories are cached here and printed from memory; may be null
+
+    // Create a lister that reads listings through cache, if it is not null
+    public DirectoryLister(DirectoryCache cache) {
+        this.cache = cache;
+    }
+
+    // Print the entries of directory to out, one line per entry, in the given order.
+    // The first skip entries (in that order) are left out and at most limit entries are printed, so a sorted
+    // listing keeps only skip + limit entries in memory. Returns the number of entries printed.
+    public long list(Path directory, SortOrder order, long skip, long limit, Writer out) throws IOException {
+        if (skip < 0 || limit < 0) {
+            throw new IllegalArgumentException("Skip and limit must not be negative");
+        }
+        LineFormatter formatter = new LineFormatter();
+        if (order == SortOrder.NONE) {
+            return printInDirectoryOrder(directory, skip, limit, formatter, out);
+        }
+
+        // Keep the best skip + limit entries in a heap whose head is the entry that would be dropped next
+        Comparator<Line> comparator = comparator(order);
+        long keep = skip + limit < 0 ? Long.MAX_VALUE : skip + limit; // Guard against overflow
+        PriorityQueue<Line> best = new PriorityQueue<>(comparator.reversed());
+        if (keep > 0) {
+            forEachEntry(directory, (name, attributes) -> {
+                Line line = new Line(name, attributes.size(), attributes.lastModifiedTime().toMillis());
+                if (best.size() < keep) {
+                    best.add(line);
+                } else if (comparator.compare(line, best.peek()) < 0) {
+                    best.poll();
+                    best.add(line);
+                }
+                return true;
+            });
+        }
+
+        // Drain the heap into display order and print the requested window
+        Line[] sorted = best.toArray(new Line[0]);
+        Arrays.sort(sorted, comparator);
+        long printed = 0;
+        for (int i = (int) Math.min(skip, sorted.length); i < sorted.length; i++) {
+            formatter.write(sorted[i].name, sorted[i].size, sorted[i].modified, out);
+            printed++;
+        }
+        return printed;
+    }
+
+    // Create a writer that sends characters to the console in large blocks; the caller flushes it but must not
+    // close it, since that would close System.out
+    public static Writer consoleWriter() {
+        String encoding = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        Charset charset = encoding != null && Charset.isSupported(encoding)
+                ? Charset.forName(encoding) : Charset.defaultCharset();
+        return new BufferedWriter(new OutputStreamWriter(System.out, charset), OUTPUT_BUFFER_SIZE);
+    }
+
+    // Print entries as the directory is read (or taken from the cache), without holding on to them
+    private long printInDirectoryOrder(Path directory, long skip, long limit, LineFormatter formatter, Writer out)
+            throws IOException {
+        long[] counts = new long[2]; // {entries seen, entries printed}
+        if (limit == 0) {
+            return 0;
+        }
+        forEachEntry(directory, (name, attributes) -> {
+            if (counts[0]++ >= skip) {
+                formatter.write(name, attributes.size(), attributes.lastModifiedTime().toMillis(), out);
+                counts[1]++;
+            }
+            return counts[1] < limit; // Stop reading the directory once the page is full
+        });
+        return counts[1];
+    }
+
+    // Receives the name and attributes of each entry; returns false to stop the listing
+    private interface EntryVisitor {
+        boolean visit(String name, BasicFileAttributes attributes) throws IOException;
+    }
+
+    // Visit the entries of a directory. With a cache the listing is taken from memory when it is cached, and
+    // otherwise streamed from disk while the cache keeps a copy only of small directories read to the end, so later
+    // pages or orders of those do not touch the disk. Without one the directory is streamed from disk, at a single
+    // readAttributes call per entry.
+    private void forEachEntry(Path directory, EntryVisitor visitor) throws IOException {
+        if (cache != null) {
+            cache.list(directory,
+                    entry -> visitor.visit(entry.getPath().getFileName().toString(), entry.getAttributes()));
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                BasicFileAttributes attributes = DirectoryCache.readAttributes(entry);
+                if (attributes != null && !visitor.visit(entry.getFileName().toString(), attributes)) {
+                    return;
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Return the comparator that puts entries in the given order
+    private static Comparator<Line> comparator(SortOrder order) {
+        switch (order) {
+            case SIZE:
+                return BY_SIZE;
+            case MODIFIED:
+                return BY_MODIFIED;
+            default:
+                return BY_NAME;
+        }
+    }
+
+    // Formats listing lines into a reused character buffer. Dates are converted by hand with the time zone offset
+    // cached until the zone's next transition, so formatting a line allocates nothing.
+    private static final class LineFormatter {
+        private final ZoneRules rules = ZoneId.systemDefault().getRules();
+        private char[] buffer = new char[128];
+        private int length;
+        private long offsetValidFrom = Long.MAX_VALUE; // Epoch seconds range in which offsetSeconds applies
+        private long offsetValidUntil = Long.MIN_VALUE;
+        private int offsetSeconds;
+
+        // Write one line: name, size and modification time in fixed-width columns
+        void write(String name, long size, long modifiedMillis, Writer out) throws IOException {
+            length = 0;
+            appendPadded(name, NAME_WIDTH);
+            append(' ');
+            int sizeStart = length;
+            appendNumber(size, 1);
+            pad(sizeStart + SIZE_WIDTH);
+            append(' ');
+            appendTimestamp(modifiedMillis);
+            out.write(buffer, 0, length);
+            out.write(System.lineSeparator());
+        }
+
+        // Append yyyy-MM-dd HH:mm:ss in the local time zone
+        private void appendTimestamp(long millis) {
+            long seconds = Math.floorDiv(millis, 1000);
+            long local = seconds + offset(seconds);
+            long days = Math.floorDiv(local, 86_400);
+            int secondOfDay = Math.floorMod(local, 86_400);
+
+            // Convert days since 1970-01-01 to a civil date (H. Hinnant's days_from_civil inverse)
+            long z = days + 719_468;
+            long era = Math.floorDiv(z, 146_097);
+            long dayOfEra = z - era * 146_097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long monthIndex = (5 * dayOfYear + 2) / 153;
+            long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+            long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+            appendNumber(year, 4);
+            append('-');
+            appendNumber(month, 2);
+            append('-');
+            appendNumber(day, 2);
+            append(' ');
+            appendNumber(secondOfDay / 3600, 2);
+            append(':');
+            appendNumber(secondOfDay / 60 % 60, 2);
+            append(':');
+            appendNumber(secondOfDay % 60, 2);
+        }
+
+        // Return the offset from UTC at the given instant, looking up the zone rules only when it may have changed
+        private int offset(long epochSeconds) {
+            if (epochSeconds < offsetValidFrom || epochSeconds >= offsetValidUntil) {
+                Instant instant = Instant.ofEpochSecond(epochSeconds);
+                offsetSeconds = rules.getOffset(instant).getTotalSeconds();
+                ZoneOffsetTransition previous = rules.previousTransition(instant);
+                ZoneOffsetTransition next = rules.nextTransition(instant);
+                offsetValidFrom = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+                offsetValidUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+            }
+            return offsetSeconds;
+        }
+
+        // Append a string and pad it with spaces to width; longer strings are not cut
+        private void appendPadded(String text, int width) {
+            int start = length;
+            ensureCapacity(text.length());
+            text.getChars(0, text.length(), buffer, length);
+            length += text.length();
+            pad(start + width);
+        }
+
+        // Append spaces until the line is the given length
+        private void pad(int end) {
+            while (length < end) {
+                append(' ');
+            }
+        }
+
+        // Append a number with at least minDigits digits, zero-padded
+        private void appendNumber(long value, int minDigits) {
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            digits = Math.max(digits, minDigits);
+            ensureCapacity(digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        private void append(char c) {
+            ensureCapacity(1);
+            buffer[length++] = c;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The DirectoryLister class prints directory listings for FileManager without holding the whole directory in
+ * memory. Entries are streamed from a DirectoryStream with one attribute read each; with a directory cache, a
+ * listing it holds is printed from memory instead, and small directories read to the end are cached for further
+ * pages. Entries are formatted into a reused character buffer with hand-rolled date formatting and written
+ * through a large buffered writer. Unsorted listings are printed while the directory is read and stop
+ * as soon as the requested page is full; sorted listings keep only the entries up to the end of the page in a heap.
+ */
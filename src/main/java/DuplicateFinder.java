@@ -0,0 +1,426 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DuplicateFinder {
+
+    // Logger instance to record log messages for the DuplicateFinder class
+    private static final Logger logger = Logger.getLogger(DuplicateFinder.class.getName());
+
+    // Default number of hashing threads; can be overridden with -Dfilemanager.dedupe.threads=<n>.
+    // Hashing is bound by the disk, so a few concurrent reads are enough to keep it busy.
+    public static final int DEFAULT_THREADS = Integer.getInteger("filemanager.dedupe.threads", 4);
+
+    // File that keeps hashes between runs; can be overridden with -Dfilemanager.hashcache.file=...
+    private static final Path DEFAULT_CACHE_FILE = Paths.get(System.getProperty("filemanager.hashcache.file",
+            Paths.get(System.getProperty("user.home"), ".filemanager", "hashes.db").toString()));
+
+    // Number of bytes hashed at the start and at the end of a file in the partial stage
+    private static final int PARTIAL_BYTES = 4096;
+
+    // Size of the per-thread buffer used to stream whole files through the digest
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    // Hash cache file format identification ("FMHC") and version
+    private static final int CACHE_MAGIC = 0x464D4843;
+    private static final int CACHE_VERSION = 1;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    // A set of files with identical content
+    public static final class Group {
+        private final long size;
+        private final List<FileInfo> files;
+
+        Group(long size, List<FileInfo> files) {
+            this.size = size;
+            this.files = files;
+        }
+
+        // Return the size of each file in bytes
+        public long getSize() {
+            return size;
+        }
+
+        // Return the paths of the identical files, sorted; the first one is the copy to keep
+        public List<Path> getFiles() {
+            List<Path> paths = new ArrayList<>(files.size());
+            for (FileInfo file : files) {
+                paths.add(file.path);
+            }
+            return paths;
+        }
+
+        // Return the number of bytes freed by keeping only one copy
+        public long getReclaimableBytes() {
+            return size * (files.size() - 1);
+        }
+
+        // Check that a file still has the size and modification time it had when it was hashed
+        public boolean isUnchanged(Path path) {
+            for (FileInfo file : files) {
+                if (file.path.equals(path)) {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        return attributes.size() == file.size
+                                && attributes.lastModifiedTime().toMillis() == file.modified;
+                    } catch (IOException e) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // A regular file found by the walk and the hashes computed for it so far
+    private static final class FileInfo {
+        final Path path;
+        final String key; // Absolute path, used as the hash cache key
+        final long size;
+        final long modified;
+        byte[] partialHash;
+        byte[] fullHash;
+
+        FileInfo(Path path, long size, long modified) {
+            this.path = path;
+            this.key = path.toAbsolutePath().normalize().toString();
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    // Hashes remembered for one file, valid while its size and modification time are unchanged
+    private static final class CachedHash {
+        final long size;
+        final long modified;
+        final byte[] partialHash;
+        final byte[] fullHash; // Null until a full hash was needed
+
+        CachedHash(long size, long modified, byte[] partialHash, byte[] fullHash) {
+            this.size = size;
+            this.modified = modified;
+            this.partialHash = partialHash;
+            this.fullHash = fullHash;
+        }
+    }
+
+    // Per-thread buffer for full hashes, so streaming a file allocates nothing
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    private final int threads;
+    private final Path cacheFile;
+    private Map<String, CachedHash> cache; // Loaded on first use
+    private long hashesComputed; // Hashes read from disk in the last run, as opposed to answered from the cache
+
+    // Create a finder that hashes on the given number of threads and keeps its hash cache in the default file
+    public DuplicateFinder(int threads) {
+        this(threads, DEFAULT_CACHE_FILE);
+    }
+
+    // Create a finder that hashes on the given number of threads and keeps its hash cache in cacheFile
+    public DuplicateFinder(int threads, Path cacheFile) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.threads = threads;
+        this.cacheFile = cacheFile;
+    }
+
+    // Find groups of identical files below root, largest reclaimable space first. Candidates are narrowed down in
+    // stages: equal size, then equal hash of the first and last 4 KB, and only then equal hash of the whole file.
+    // Empty files, symbolic links and additional hard links to an already seen file are ignored.
+    public synchronized List<Group> find(Path root) throws IOException {
+        if (cache == null) {
+            cache = loadCache(cacheFile);
+        }
+        hashesComputed = 0;
+
+        // Stage 1: group by size, which costs nothing beyond the walk
+        List<List<FileInfo>> candidates = new ArrayList<>();
+        Set<String> walked = new HashSet<>(); // Cache keys of every file found, to prune deleted files from the cache
+        for (List<FileInfo> sameSize : walk(root).values()) {
+            for (FileInfo file : sameSize) {
+                walked.add(file.key);
+            }
+            if (sameSize.size() > 1) {
+                candidates.add(sameSize);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Group> groups = new ArrayList<>();
+        try {
+            // Stage 2: hash the head and tail of every candidate and split each size group by that hash
+            List<FileInfo> toHash = new ArrayList<>();
+            candidates.forEach(toHash::addAll);
+            hashAll(pool, toHash, false);
+            List<List<FileInfo>> partialGroups = new ArrayList<>();
+            for (List<FileInfo> sameSize : candidates) {
+                partialGroups.addAll(splitByHash(sameSize, false));
+            }
+
+            // Stage 3: files whose head and tail overlap were hashed completely already; hash the rest in full
+            toHash.clear();
+            for (List<FileInfo> group : partialGroups) {
+                if (group.get(0).size > 2L * PARTIAL_BYTES) {
+                    toHash.addAll(group);
+                }
+            }
+            hashAll(pool, toHash, true);
+            for (List<FileInfo> group : partialGroups) {
+                boolean complete = group.get(0).size <= 2L * PARTIAL_BYTES;
+                for (List<FileInfo> identical : complete ? Collections.singletonList(group) : splitByHash(group, true)) {
+                    identical.sort(Comparator.comparing(file -> file.path.toString()));
+                    groups.add(new Group(identical.get(0).size, identical));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        saveCache(root, walked);
+        groups.sort(Comparator.comparingLong(Group::getReclaimableBytes).reversed());
+        return groups;
+    }
+
+    // Return the number of partial and full hashes computed from disk in the last run; the others came from the cache
+    public synchronized long getHashesComputed() {
+        return hashesComputed;
+    }
+
+    // Walk the tree and group the regular files by size
+    private static Map<Long, List<FileInfo>> walk(Path root) throws IOException {
+        Map<Long, List<FileInfo>> bySize = new HashMap<>();
+        Set<Object> seenFiles = new HashSet<>(); // File keys (device and inode) of the files already recorded
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Object fileKey = attrs.fileKey();
+                if (attrs.isRegularFile() && attrs.size() > 0 && (fileKey == null || seenFiles.add(fileKey))) {
+                    bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>())
+                            .add(new FileInfo(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                logger.log(Level.FINE, "Skipped unreadable entry {0} - {1}", new Object[]{file, exc.getMessage()});
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bySize;
+    }
+
+    // Compute the partial or full hash of every file on the pool, taking hashes from the cache where possible.
+    // Files that cannot be read are left without a hash and drop out of the candidates.
+    private void hashAll(ExecutorService pool, List<FileInfo> files, boolean full) throws IOException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (FileInfo file : files) {
+            CachedHash cached = cache.get(file.key);
+            if (cached != null && cached.size == file.size && cached.modified == file.modified) {
+                // Take every hash the cache has, so a full hash from an earlier run is kept
+                file.partialHash = file.partialHash != null ? file.partialHash : cached.partialHash;
+                file.fullHash = file.fullHash != null ? file.fullHash : cached.fullHash;
+            }
+            if ((full ? file.fullHash : file.partialHash) != null) {
+                continue;
+            }
+            hashesComputed++;
+            futures.add(pool.submit(() -> {
+                try {
+                    setHash(file, full ? fullHash(file.path) : partialHash(file.path, file.size), full);
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Skipped unreadable file {0} - {1}", new Object[]{file.path, e.getMessage()});
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Duplicate search interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Hashing failed: " + e.getCause(), e.getCause());
+        }
+
+        // Remember the new hashes for the next run
+        for (FileInfo file : files) {
+            if (file.partialHash != null) {
+                cache.put(file.key, new CachedHash(file.size, file.modified, file.partialHash, file.fullHash));
+            }
+        }
+    }
+
+    // Store a hash on a file; the futures in hashAll publish it to the calling thread
+    private static void setHash(FileInfo file, byte[] hash, boolean full) {
+        if (full) {
+            file.fullHash = hash;
+        } else {
+            file.partialHash = hash;
+        }
+    }
+
+    // Split a group of files into groups of two or more with the same partial or full hash
+    private static List<List<FileInfo>> splitByHash(List<FileInfo> files, boolean full) {
+        Map<ByteBuffer, List<FileInfo>> byHash = new HashMap<>();
+        for (FileInfo file : files) {
+            byte[] hash = full ? file.fullHash : file.partialHash;
+            if (hash != null) {
+                byHash.computeIfAbsent(ByteBuffer.wrap(hash), key -> new ArrayList<>()).add(file);
+            }
+        }
+        List<List<FileInfo>> groups = new ArrayList<>();
+        for (List<FileInfo> group : byHash.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    // Hash the first and last PARTIAL_BYTES of a file; a file of up to twice that size is hashed completely
+    private static byte[] partialHash(Path path, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(PARTIAL_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readFully(channel, buffer, 0);
+            digest.update(buffer.flip());
+            long tail = Math.max(PARTIAL_BYTES, size - PARTIAL_BYTES);
+            if (tail < size) {
+                buffer.clear();
+                readFully(channel, buffer, tail);
+                digest.update(buffer.flip());
+            }
+        }
+        return digest.digest();
+    }
+
+    // Stream the whole file through the digest
+    private static byte[] fullHash(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = READ_BUFFER.get();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    // Fill the buffer from the given position or until the end of the file
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e); // Required on every JVM
+        }
+    }
+
+    // Read the hash cache; a missing or unreadable cache simply starts empty
+    private static Map<String, CachedHash> loadCache(Path file) {
+        Map<String, CachedHash> cache = new HashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                byte[] partialHash = readHash(in);
+                byte[] fullHash = in.readBoolean() ? readHash(in) : null;
+                cache.put(key, new CachedHash(size, modified, partialHash, fullHash));
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Ignoring unreadable hash cache {0} - {1}", new Object[]{file, e.getMessage()});
+            cache.clear();
+        }
+        return cache;
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        return hash;
+    }
+
+    // Write the hash cache, dropping entries below root for files the walk no longer found
+    private void saveCache(Path root, Set<String> walked) {
+        Path prefix = root.toAbsolutePath().normalize();
+        cache.keySet().removeIf(key -> !walked.contains(key) && Paths.get(key).startsWith(prefix));
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            // Write to a temporary file first so a crash never leaves a half-written cache
+            Path temporary = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), "hashes", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(temporary)))) {
+                    out.writeInt(CACHE_MAGIC);
+                    out.writeInt(CACHE_VERSION);
+                    out.writeInt(cache.size());
+                    for (Map.Entry<String, CachedHash> entry : cache.entrySet()) {
+                        CachedHash hash = entry.getValue();
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(hash.size);
+                        out.writeLong(hash.modified);
+                        writeHash(out, hash.partialHash);
+                        out.writeBoolean(hash.fullHash != null);
+                        if (hash.fullHash != null) {
+                            writeHash(out, hash.fullHash);
+                        }
+                    }
+                }
+                Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // The cache only saves work on the next run, so a failure to write it is not an error for this one
+            logger.log(Level.WARNING, "Failed to write hash cache {0} - {1}", new Object[]{cacheFile, e.getMessage()});
+        }
+    }
+
+    private static void writeHash(DataOutputStream out, byte[] hash) throws IOException {
+        out.writeByte(hash.length);
+        out.write(hash);
+    }
+}
+
+/*
+ * Summary:
+ * The DuplicateFinder class finds files with identical content below a directory. Candidates are narrowed down in
+ * stages so that most files are never read: files are first grouped by size, then by a SHA-256 hash of their first
+ * and last 4 KB, and only files that still collide are hashed in full. Hashing runs on a small fixed pool so reads
+ * are parallel but bounded by what the disk can serve. Hashes are kept in a cache file keyed by path, size and
+ * modification time, so repeated runs over a mostly unchanged tree read only new or modified files.
+ */
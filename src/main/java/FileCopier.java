@@ -0,0 +1,295 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public class FileCopier {
+
+    // Logger instance to record log messages for the FileCopier class
+    private static final Logger logger = Logger.getLogger(FileCopier.class.getName());
+
+    // Default chunk size; can be overridden with -Dfilemanager.copy.chunkSize=<bytes>
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("filemanager.copy.chunkSize", 16 * 1024 * 1024);
+
+    // Whether chunks are verified by default; can be enabled with -Dfilemanager.copy.verify=true
+    public static final boolean DEFAULT_VERIFY = Boolean.getBoolean("filemanager.copy.verify");
+
+    // Suffixes of the partial destination file and of its checkpoint
+    private static final String PART_SUFFIX = ".part";
+    private static final String CHECKPOINT_SUFFIX = ".part.ckpt";
+
+    // Checkpoint file format identification ("FCPY") and version
+    private static final int CHECKPOINT_MAGIC = 0x46435059;
+    private static final int CHECKPOINT_VERSION = 2;
+
+    // Receives progress updates after every chunk
+    public interface ProgressListener {
+        void onProgress(long bytesCopied, long totalBytes, double bytesPerSecond);
+    }
+
+    private final int chunkSize;
+    private final boolean verify;
+    private final ProgressListener listener;
+
+    // Create a copier with the default chunk size and verification setting and no progress reporting
+    public FileCopier() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_VERIFY, null);
+    }
+
+    // Create a copier that copies chunkSize bytes at a time, optionally verifying each chunk with a CRC32
+    public FileCopier(int chunkSize, boolean verify, ProgressListener listener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.verify = verify;
+        this.listener = listener;
+    }
+
+    // Copy source to destination, replacing an existing destination file.
+    // Files larger than one chunk are copied through a partial file and a checkpoint, so an interrupted
+    // copy of the same source resumes where it stopped. Returns the number of bytes copied by this call.
+    public long copy(Path source, Path destination) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        if (!attributes.isRegularFile() || attributes.size() <= chunkSize) {
+            // Small files and special files gain nothing from chunking; let the JDK use its native copy. Attributes are
+            // copied here too, so what a copy preserves does not depend on the file's size.
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            return attributes.size();
+        }
+
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        // Identify the source by path and file key (device and inode), so another file that happens to have the
+        // same size and modification time never resumes this copy
+        String sourcePath = source.toAbsolutePath().normalize().toString();
+        String sourceKey = String.valueOf(attributes.fileKey());
+        Path part = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+        Path checkpointFile = destination.resolveSibling(destination.getFileName() + CHECKPOINT_SUFFIX);
+
+        // Resume from a checkpoint that was written for exactly this source and chunk layout
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile, sourcePath, sourceKey, size, modified, chunkSize,
+                verify);
+        if (checkpoint == null || !Files.isRegularFile(part)) {
+            checkpoint = new Checkpoint(sourcePath, sourceKey, size, modified, chunkSize, verify, chunkCount(size));
+        }
+
+        long start = System.nanoTime();
+        long copiedNow = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            if (verify && checkpoint.completedChunks > 0) {
+                // Trust only the resumed chunks whose data still matches the checksums recorded when they were copied
+                checkpoint.completedChunks = verifiedChunks(out, checkpoint);
+            }
+            if (checkpoint.completedChunks > 0) {
+                logger.log(Level.INFO, "Resuming copy of {0} at chunk {1,number,#}",
+                        new Object[]{source, checkpoint.completedChunks});
+            }
+            long resumeAt = (long) checkpoint.completedChunks * chunkSize;
+            out.truncate(resumeAt); // Discard any bytes written after the last checkpoint
+
+            for (int chunk = checkpoint.completedChunks; chunk < checkpoint.crcs.length; chunk++) {
+                long position = (long) chunk * chunkSize;
+                long length = Math.min(chunkSize, size - position);
+                copyChunk(in, out, position, length);
+                if (verify) {
+                    checkpoint.crcs[chunk] = verifyChunk(in, out, position, length, source);
+                }
+                copiedNow += length;
+
+                // Make the chunk durable before recording it, so a resume never trusts unwritten data
+                out.force(false);
+                checkpoint.completedChunks = chunk + 1;
+                checkpoint.write(checkpointFile);
+                report(position + length, size, copiedNow, start);
+            }
+            out.force(true);
+        }
+
+        // Give the complete file the source's permissions and modification time, like COPY_ATTRIBUTES would
+        copyAttributes(source, part, attributes);
+
+        // Publish the complete file and drop the resume state
+        try {
+            Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(checkpointFile);
+        return copiedNow;
+    }
+
+    // Copy one chunk with FileChannel.transferTo, which lets the kernel move the data (sendfile / copy_file_range)
+    private static void copyChunk(FileChannel in, FileChannel out, long position, long length) throws IOException {
+        out.position(position);
+        long done = 0;
+        while (done < length) {
+            long transferred = in.transferTo(position + done, length - done, out);
+            if (transferred <= 0) {
+                throw new EOFException("Source ended early at byte " + (position + done));
+            }
+            done += transferred;
+        }
+    }
+
+    // Compare the CRC32 of a chunk in the source and the destination; returns the checksum
+    private static int verifyChunk(FileChannel in, FileChannel out, long position, long length, Path source)
+            throws IOException {
+        int expected = crc(in.map(FileChannel.MapMode.READ_ONLY, position, length));
+        int actual = crc(out.map(FileChannel.MapMode.READ_ONLY, position, length));
+        if (expected != actual) {
+            // Retry the chunk once before giving up
+            copyChunk(in, out, position, length);
+            actual = crc(out.map(FileChannel.MapMode.READ_ONLY, position, length));
+            if (expected != actual) {
+                throw new IOException("Checksum mismatch copying " + source + " at byte " + position);
+            }
+        }
+        return expected;
+    }
+
+    // Return the number of leading completed chunks of the partial file that still match their recorded checksums
+    private int verifiedChunks(FileChannel out, Checkpoint checkpoint) throws IOException {
+        long partSize = out.size();
+        for (int chunk = 0; chunk < checkpoint.completedChunks; chunk++) {
+            long position = (long) chunk * chunkSize;
+            long length = Math.min(chunkSize, checkpoint.sourceSize - position);
+            if (position + length > partSize
+                    || crc(out.map(FileChannel.MapMode.READ_ONLY, position, length)) != checkpoint.crcs[chunk]) {
+                logger.log(Level.WARNING, "Partial copy damaged at chunk {0,number,#}, copying it again", chunk);
+                return chunk;
+            }
+        }
+        return checkpoint.completedChunks;
+    }
+
+    // Copy the POSIX permissions (where supported) and the modification time of source onto target
+    private static void copyAttributes(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null) {
+            view.setPermissions(Files.getPosixFilePermissions(source));
+        }
+        Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+    }
+
+    // Compute the CRC32 of a mapped region
+    private static int crc(MappedByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+
+    // Return the number of chunks needed for a file of the given size
+    private int chunkCount(long size) {
+        long count = (size + chunkSize - 1) / chunkSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk size too small for a file of " + size + " bytes");
+        }
+        return (int) count;
+    }
+
+    // Pass a progress update to the listener, if there is one
+    private void report(long bytesCopied, long totalBytes, long copiedNow, long start) {
+        if (listener != null) {
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1_000_000_000.0;
+            listener.onProgress(bytesCopied, totalBytes, copiedNow / seconds);
+        }
+    }
+
+    // Resume state of a chunked copy: which source it belongs to and how many chunks are complete
+    private static final class Checkpoint {
+        final String sourcePath; // Absolute, normalized path of the source
+        final String sourceKey; // File key (device and inode) of the source, or "null" where there is none
+        final long sourceSize;
+        final long sourceModified;
+        final int chunkSize;
+        final boolean verify;
+        final int[] crcs; // CRC32 of every completed chunk when verification is enabled
+        int completedChunks;
+
+        Checkpoint(String sourcePath, String sourceKey, long sourceSize, long sourceModified, int chunkSize,
+                   boolean verify, int chunkCount) {
+            this.sourcePath = sourcePath;
+            this.sourceKey = sourceKey;
+            this.sourceSize = sourceSize;
+            this.sourceModified = sourceModified;
+            this.chunkSize = chunkSize;
+            this.verify = verify;
+            this.crcs = new int[chunkCount];
+        }
+
+        // Read a checkpoint; returns null if there is none or it belongs to a different source or layout
+        static Checkpoint read(Path file, String sourcePath, String sourceKey, long sourceSize, long sourceModified,
+                               int chunkSize, boolean verify) {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION
+                        || !in.readUTF().equals(sourcePath) || !in.readUTF().equals(sourceKey)
+                        || in.readLong() != sourceSize || in.readLong() != sourceModified
+                        || in.readInt() != chunkSize || in.readBoolean() != verify) {
+                    return null; // The source changed or the copy used different settings; start over
+                }
+                int chunkCount = in.readInt();
+                Checkpoint checkpoint = new Checkpoint(sourcePath, sourceKey, sourceSize, sourceModified, chunkSize,
+                        verify, chunkCount);
+                checkpoint.completedChunks = in.readInt();
+                for (int i = 0; i < chunkCount; i++) {
+                    checkpoint.crcs[i] = in.readInt();
+                }
+                if (checkpoint.completedChunks < 0 || checkpoint.completedChunks > chunkCount) {
+                    return null;
+                }
+                return checkpoint;
+            } catch (IOException | NegativeArraySizeException e) {
+                return null; // A torn or corrupt checkpoint only means the copy starts from the beginning
+            }
+        }
+
+        // Write the checkpoint and force it to disk
+        void write(Path file) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeUTF(sourcePath);
+                out.writeUTF(sourceKey);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(chunkSize);
+                out.writeBoolean(verify);
+                out.writeInt(crcs.length);
+                out.writeInt(completedChunks);
+                for (int crc : crcs) {
+                    out.writeInt(crc);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+                channel.force(false);
+            }
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The FileCopier class copies large files in fixed-size chunks with FileChannel.transferTo, so the kernel can move
+ * the data without copying it through the Java heap. After every chunk it reports progress and throughput and
+ * records a checkpoint next to the destination; an interrupted copy of the same, unchanged source (same path, inode,
+ * size and modification time) resumes from the last completed chunk, after re-checking the resumed chunks' CRCs when
+ * verification is on. Each chunk can optionally be verified by comparing CRC32 checksums of the memory-mapped
+ * source and destination regions. Files no larger than one chunk are handed to Files.copy with COPY_ATTRIBUTES,
+ * and chunked copies get the source's permissions and modification time before they are moved into place, so
+ * every copy keeps them whatever its size.
+ */
@@ -0,0 +1,668 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+public class FileIndex {
+
+    // Logger instance to record log messages for the FileIndex class
+    private static final Logger logger = Logger.getLogger(FileIndex.class.getName());
+
+    // Directory that holds the index files; can be overridden with -Dfilemanager.index.dir=...
+    private static final Path INDEX_DIRECTORY = Paths.get(System.getProperty("filemanager.index.dir",
+            Paths.get(System.getProperty("user.home"), ".filemanager", "index").toString()));
+
+    // File format identification ("FIDX") and version
+    private static final int MAGIC = 0x46494458;
+    private static final int VERSION = 1;
+
+    // Sizes in bytes of the fixed-size parts of the index file
+    private static final int HEADER_SIZE = 15 * Integer.BYTES;
+    private static final int DIRECTORY_RECORD_SIZE = Long.BYTES + 4 * Integer.BYTES;
+    private static final int FILE_RECORD_SIZE = 3 * Integer.BYTES;
+    private static final int TRIGRAM_RECORD_SIZE = 3 * Integer.BYTES;
+
+    /*
+     * Index file layout (all integers big-endian):
+     *   header     magic, version, rootOffset, rootLength, directoryCount, fileCount, trigramCount,
+     *              and the offsets of the strings, directories, entries, files, trigrams and postings sections
+     *   strings    UTF-8 bytes of the root path, relative directory paths and (deduplicated) file names
+     *   directories  per directory: mtime, pathOffset, pathLength, firstEntry, entryCount
+     *   entries    per directory entry in listing order: file id (>= 0) or -(subdirectory index + 1)
+     *   files      per file, in the order the sequential search reports them: directory index, nameOffset, nameLength
+     *   trigrams   sorted by key: key (three UTF-8 bytes), postingsOffset, postingsCount
+     *   postings   per trigram: ascending file ids, delta and varint encoded
+     */
+
+    private final Path root; // Root directory as given by the caller, used to build result paths
+    private final ByteBuffer buffer; // Memory-mapped contents of the index file
+    private final int directoryCount;
+    private final int fileCount;
+    private final int trigramCount;
+    private final int stringsOffset;
+    private final int directoriesOffset;
+    private final int entriesOffset;
+    private final int filesOffset;
+    private final int trigramsOffset;
+    private final int postingsOffset;
+
+    // Number of directories that had to be listed from disk when this index was built (0 for loaded indexes)
+    private int rescannedDirectories;
+
+    private FileIndex(Path root, ByteBuffer buffer) {
+        this.root = root;
+        this.buffer = buffer;
+        this.directoryCount = buffer.getInt(16);
+        this.fileCount = buffer.getInt(20);
+        this.trigramCount = buffer.getInt(24);
+        this.stringsOffset = buffer.getInt(28);
+        this.directoriesOffset = buffer.getInt(32);
+        this.entriesOffset = buffer.getInt(36);
+        this.filesOffset = buffer.getInt(40);
+        this.trigramsOffset = buffer.getInt(44);
+        this.postingsOffset = buffer.getInt(48);
+    }
+
+    // Return the location of the index file for the given root directory
+    public static Path indexLocation(String directoryPath) {
+        String key = Paths.get(directoryPath).toAbsolutePath().normalize().toString();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return INDEX_DIRECTORY.resolve(name.append(".idx").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JDK is required to provide it
+        }
+    }
+
+    // Load the index of the given root directory, or return null if there is no usable index
+    public static FileIndex load(String directoryPath) throws IOException {
+        Path indexFile = indexLocation(directoryPath);
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            logger.log(Level.WARNING, "Ignoring index with unknown format: {0}", indexFile);
+            return null;
+        }
+        // Make sure the index really belongs to this root and not to a colliding one
+        String indexedRoot = readString(buffer, buffer.getInt(8), buffer.getInt(12));
+        if (!indexedRoot.equals(Paths.get(directoryPath).toAbsolutePath().normalize().toString())) {
+            return null;
+        }
+        return new FileIndex(Paths.get(directoryPath), buffer);
+    }
+
+    // Build the index of the given root directory, or refresh it if an index already exists.
+    // Directories whose modification time has not changed since the last build are not listed again.
+    public static FileIndex build(String directoryPath) throws IOException {
+        Path root = Paths.get(directoryPath);
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(directoryPath);
+        }
+        FileIndex previous = load(directoryPath);
+
+        // Walk the tree in parallel, reusing the listings of unchanged directories from the previous index
+        Listing tree = new Listing(root, "");
+        AtomicInteger rescanned = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(ParallelFileSearcher.DEFAULT_PARALLELISM);
+        try {
+            pool.invoke(new ListingTask(null, root, tree, previous,
+                    previous == null ? null : previous.directoryIndexes(), rescanned));
+        } finally {
+            pool.shutdown();
+        }
+
+        // Write to a temporary file first so readers never see a half-written index
+        Path indexFile = indexLocation(directoryPath);
+        Files.createDirectories(indexFile.getParent());
+        Path temporary = Files.createTempFile(indexFile.getParent(), "index", ".tmp");
+        try {
+            new IndexWriter(root.toAbsolutePath().normalize().toString()).write(tree, temporary);
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        FileIndex index = load(directoryPath);
+        if (index == null) {
+            throw new IOException("Index could not be read back: " + indexFile);
+        }
+        index.rescannedDirectories = rescanned.get();
+        return index;
+    }
+
+    // Return the number of indexed directories
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    // Return the number of indexed files
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    // Return the number of directories that were listed from disk when this index was built
+    public int getRescannedDirectories() {
+        return rescannedDirectories;
+    }
+
+    // Check whether no indexed directory has been modified since the index was built.
+    // This costs one stat call per directory instead of listing every directory.
+    public boolean isFresh() {
+        return IntStream.range(0, directoryCount).parallel().allMatch(i -> {
+            long modified = directoryModified(i);
+            if (modified < 0) {
+                return false; // The directory could not be read when the index was built
+            }
+            try {
+                return Files.getLastModifiedTime(Paths.get(directoryString(i))).toMillis() == modified;
+            } catch (IOException | InvalidPathException e) {
+                return false; // Gone, unreadable, or not representable in the platform encoding
+            }
+        });
+    }
+
+    // Return the paths of all indexed files whose name contains searchQuery,
+    // in the same order as FileManager.searchFiles reports them
+    public List<String> search(String searchQuery) {
+        byte[] query = searchQuery.getBytes(StandardCharsets.UTF_8);
+        List<String> matchedFiles = new ArrayList<>();
+        String[] directories = new String[directoryCount]; // Directory path strings, filled in on first use
+
+        if (query.length < 3) {
+            // Too short for the trigram table; scan all names, which are already in memory
+            for (int id = 0; id < fileCount; id++) {
+                addIfMatches(id, searchQuery, directories, matchedFiles);
+            }
+        } else {
+            // Only files that contain every trigram of the query can match
+            for (int id : candidates(query)) {
+                addIfMatches(id, searchQuery, directories, matchedFiles);
+            }
+        }
+        return matchedFiles;
+    }
+
+    // Check the name of one file against the query and add its path to the results if it matches
+    private void addIfMatches(int id, String searchQuery, String[] directories, List<String> matchedFiles) {
+        int record = filesOffset + id * FILE_RECORD_SIZE;
+        String name = string(buffer.getInt(record + 4), buffer.getInt(record + 8));
+        if (name.contains(searchQuery)) {
+            int directory = buffer.getInt(record);
+            if (directories[directory] == null) {
+                directories[directory] = directoryString(directory);
+            }
+            matchedFiles.add(join(directories[directory], name));
+        }
+    }
+
+    // Intersect the posting lists of all trigrams of the query; the result is sorted by file id
+    private int[] candidates(byte[] query) {
+        List<int[]> postings = new ArrayList<>();
+        for (int i = 0; i + 2 < query.length; i++) {
+            int slot = findTrigram(trigramKey(query, i));
+            if (slot < 0) {
+                return new int[0]; // No file contains this trigram
+            }
+            postings.add(decodePostings(slot));
+        }
+        // Start with the shortest list so the intersection shrinks as fast as possible
+        postings.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = postings.get(0);
+        for (int i = 1; i < postings.size() && result.length > 0; i++) {
+            result = intersect(result, postings.get(i));
+        }
+        return result;
+    }
+
+    // Binary search the trigram table; returns the record index or -1
+    private int findTrigram(int key) {
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int candidate = buffer.getInt(trigramsOffset + middle * TRIGRAM_RECORD_SIZE);
+            if (candidate < key) {
+                low = middle + 1;
+            } else if (candidate > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // Decode the delta and varint encoded posting list of one trigram
+    private int[] decodePostings(int slot) {
+        int record = trigramsOffset + slot * TRIGRAM_RECORD_SIZE;
+        int position = postingsOffset + buffer.getInt(record + 4);
+        int[] ids = new int[buffer.getInt(record + 8)];
+        int previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += value;
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    // Intersect two ascending arrays of file ids
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Pack three bytes starting at offset into a trigram key
+    private static int trigramKey(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 16 | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF);
+    }
+
+    // Return the modification time recorded for a directory, or -1 if it could not be read
+    private long directoryModified(int directory) {
+        return buffer.getLong(directoriesOffset + directory * DIRECTORY_RECORD_SIZE);
+    }
+
+    // Return the path of a directory relative to the root ("" for the root itself)
+    private String directoryPath(int directory) {
+        int record = directoriesOffset + directory * DIRECTORY_RECORD_SIZE;
+        return string(buffer.getInt(record + 8), buffer.getInt(record + 12));
+    }
+
+    // Return the path of a directory as the walker would print it, starting with the root as given by the caller.
+    // Strings are joined directly because names read back from the index may not survive another Path conversion.
+    private String directoryString(int directory) {
+        String relativePath = directoryPath(directory);
+        return relativePath.isEmpty() ? root.toString() : join(root.toString(), relativePath);
+    }
+
+    // Join a parent path string and a child name the same way Path.resolve does
+    private String join(String parent, String child) {
+        String separator = root.getFileSystem().getSeparator();
+        if (parent.isEmpty()) {
+            return child;
+        }
+        return parent.endsWith(separator) ? parent + child : parent + separator + child;
+    }
+
+    // Map every indexed relative directory path to its directory index
+    private Map<String, Integer> directoryIndexes() {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < directoryCount; i++) {
+            indexes.put(directoryPath(i), i);
+        }
+        return indexes;
+    }
+
+    // Copy the listing of an unchanged directory from this index into a new listing
+    private void copyEntries(int directory, Listing listing, String separator) {
+        int record = directoriesOffset + directory * DIRECTORY_RECORD_SIZE;
+        int first = buffer.getInt(record + 16);
+        int count = buffer.getInt(record + 20);
+        for (int i = first; i < first + count; i++) {
+            int entry = buffer.getInt(entriesOffset + i * Integer.BYTES);
+            if (entry >= 0) {
+                int file = filesOffset + entry * FILE_RECORD_SIZE;
+                listing.entries.add(string(buffer.getInt(file + 4), buffer.getInt(file + 8)));
+            } else {
+                String path = directoryPath(-entry - 1);
+                String name = path.substring(path.lastIndexOf(separator) + 1);
+                listing.entries.add(new Listing(listing.directory.resolve(name), listing.child(name, separator)));
+            }
+        }
+    }
+
+    // Decode a UTF-8 string stored at the given offset within the strings section
+    private String string(int offset, int length) {
+        return readString(buffer, stringsOffset + offset, length);
+    }
+
+    // Decode a UTF-8 string stored at the given absolute offset
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.duplicate().position(offset).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // In-memory listing of one directory while the index is being built
+    private static final class Listing {
+        final Path directory; // Path of the directory as seen by the walker
+        final String relativePath; // Path relative to the root, "" for the root itself
+        final List<Object> entries = new ArrayList<>(); // File names (String) and subdirectories (Listing), in listing order
+        long modified = -1; // Modification time in milliseconds, -1 if the directory could not be read
+
+        Listing(Path directory, String relativePath) {
+            this.directory = directory;
+            this.relativePath = relativePath;
+        }
+
+        // Return the relative path of a child entry
+        String child(String name, String separator) {
+            return relativePath.isEmpty() ? name : relativePath + separator + name;
+        }
+    }
+
+    // Fork-join task that fills in the listing of one directory and forks its subdirectories. It completes once all
+    // of them have, without waiting for them on its own stack, so the depth of the tree does not limit the build.
+    private static final class ListingTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final Path root;
+        private final Listing listing;
+        private final FileIndex previous;
+        private final Map<String, Integer> previousDirectories;
+        private final AtomicInteger rescanned;
+
+        ListingTask(ListingTask parent, Path root, Listing listing, FileIndex previous,
+                    Map<String, Integer> previousDirectories, AtomicInteger rescanned) {
+            super(parent);
+            this.root = root;
+            this.listing = listing;
+            this.previous = previous;
+            this.previousDirectories = previousDirectories;
+            this.rescanned = rescanned;
+        }
+
+        @Override
+        public void compute() {
+            Path directory = listing.directory;
+            String separator = directory.getFileSystem().getSeparator();
+            try {
+                long modified = Files.getLastModifiedTime(directory).toMillis();
+                Integer known = previousDirectories == null ? null : previousDirectories.get(listing.relativePath);
+                if (known != null && previous.directoryModified(known) == modified
+                        && copyEntries(known, separator)) {
+                    // Unchanged since the last build: its entries are still valid, only subdirectories need checking
+                } else {
+                    rescanned.incrementAndGet();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                        for (Path entry : stream) {
+                            String name = entry.getFileName().toString();
+                            if (isDirectory(entry)) {
+                                listing.entries.add(new Listing(entry, listing.child(name, separator)));
+                            } else {
+                                listing.entries.add(name);
+                            }
+                        }
+                    }
+                }
+                listing.modified = modified; // Only record the time once the listing is complete
+            } catch (IOException | DirectoryIteratorException e) {
+                // Leave the directory marked as unreadable so the index is never considered fresh
+                logger.log(Level.WARNING, "Failed to index directory {0} - {1}",
+                        new Object[]{directory, e.getMessage()});
+            }
+
+            // Check all subdirectories in parallel; this task completes when the last of them does
+            for (Object entry : listing.entries) {
+                if (entry instanceof Listing) {
+                    addToPendingCount(1);
+                    new ListingTask(this, root, (Listing) entry, previous, previousDirectories, rescanned).fork();
+                }
+            }
+            tryComplete();
+        }
+
+        // Take the entries of an unchanged directory from the previous index; false if they must be listed again
+        private boolean copyEntries(int known, String separator) {
+            try {
+                previous.copyEntries(known, listing, separator);
+                return true;
+            } catch (InvalidPathException e) {
+                listing.entries.clear(); // A stored name cannot be turned back into a path on this platform
+                return false;
+            }
+        }
+
+        // Check whether an entry is a directory, following symbolic links like Files.isDirectory does
+        private static boolean isDirectory(Path entry) {
+            try {
+                return Files.readAttributes(entry, BasicFileAttributes.class).isDirectory();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    // Serializes a tree of listings into the index file format
+    private static final class IndexWriter {
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        private final Map<String, int[]> stringSlots = new HashMap<>(); // Deduplicates names: offset and length
+        private final SectionBuffer directories = new SectionBuffer();
+        private final SectionBuffer entries = new SectionBuffer();
+        private final SectionBuffer files = new SectionBuffer();
+        private final Map<Integer, IntList> postings = new HashMap<>();
+        private final String rootPath;
+        private int directoryCount;
+        private int fileCount;
+        private int entryCount;
+
+        IndexWriter(String rootPath) {
+            this.rootPath = rootPath;
+        }
+
+        void write(Listing tree, Path target) throws IOException {
+            int[] rootSlot = intern(rootPath);
+            List<int[]> directoryEntries = new ArrayList<>();
+            List<Listing> directoryListings = new ArrayList<>();
+            assign(tree, directoryEntries, directoryListings);
+
+            // Directory records and their entries, in directory index order
+            for (int i = 0; i < directoryListings.size(); i++) {
+                Listing listing = directoryListings.get(i);
+                int[] slot = intern(listing.relativePath);
+                int[] values = directoryEntries.get(i);
+                directories.out.writeLong(listing.modified);
+                directories.out.writeInt(slot[0]);
+                directories.out.writeInt(slot[1]);
+                directories.out.writeInt(entryCount);
+                directories.out.writeInt(values.length);
+                for (int value : values) {
+                    entries.out.writeInt(value);
+                }
+                entryCount += values.length;
+            }
+
+            // Trigram table and postings, sorted by key for binary search
+            SectionBuffer trigrams = new SectionBuffer();
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            List<Integer> keys = new ArrayList<>(postings.keySet());
+            Collections.sort(keys);
+            for (int key : keys) {
+                IntList ids = postings.get(key);
+                trigrams.out.writeInt(key);
+                trigrams.out.writeInt(encoded.size());
+                trigrams.out.writeInt(ids.size);
+                int previous = 0;
+                for (int i = 0; i < ids.size; i++) {
+                    int delta = ids.values[i] - previous;
+                    previous = ids.values[i];
+                    while ((delta & ~0x7F) != 0) {
+                        encoded.write((delta & 0x7F) | 0x80);
+                        delta >>>= 7;
+                    }
+                    encoded.write(delta);
+                }
+            }
+
+            long stringsOffset = HEADER_SIZE;
+            long directoriesOffset = stringsOffset + strings.size();
+            long entriesOffset = directoriesOffset + directories.bytes.size();
+            long filesOffset = entriesOffset + entries.bytes.size();
+            long trigramsOffset = filesOffset + files.bytes.size();
+            long postingsOffset = trigramsOffset + trigrams.bytes.size();
+            long total = postingsOffset + encoded.size();
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("Index would exceed 2 GB; index a smaller directory tree");
+            }
+
+            SectionBuffer header = new SectionBuffer();
+            int[] fields = {MAGIC, VERSION, (int) stringsOffset + rootSlot[0], rootSlot[1], directoryCount, fileCount,
+                    keys.size(), (int) stringsOffset, (int) directoriesOffset, (int) entriesOffset, (int) filesOffset,
+                    (int) trigramsOffset, (int) postingsOffset, 0, 0};
+            for (int field : fields) {
+                header.out.writeInt(field);
+            }
+
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (byte[] section : new byte[][]{header.bytes.toByteArray(), strings.toByteArray(),
+                        directories.bytes.toByteArray(), entries.bytes.toByteArray(), files.bytes.toByteArray(),
+                        trigrams.bytes.toByteArray(), encoded.toByteArray()}) {
+                    ByteBuffer source = ByteBuffer.wrap(section);
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                }
+                channel.force(false);
+            }
+        }
+
+        // Assign directory indexes and file ids depth-first, in the order the sequential search visits them.
+        // An explicit stack replaces recursion, so very deep trees cannot overflow the thread stack.
+        private void assign(Listing tree, List<int[]> directoryEntries, List<Listing> directoryListings)
+                throws IOException {
+            Deque<DirectoryFrame> stack = new ArrayDeque<>();
+            stack.push(open(tree, directoryEntries, directoryListings));
+            while (!stack.isEmpty()) {
+                DirectoryFrame frame = stack.peek();
+                if (frame.next == frame.values.length) {
+                    // All entries have ids, including the subdirectories' indexes
+                    directoryEntries.set(frame.index, frame.values);
+                    stack.pop();
+                    continue;
+                }
+                int i = frame.next++;
+                Object entry = frame.listing.entries.get(i);
+                if (entry instanceof Listing) {
+                    DirectoryFrame child = open((Listing) entry, directoryEntries, directoryListings);
+                    frame.values[i] = -child.index - 1;
+                    stack.push(child); // Number the subtree before the rest of this directory
+                } else {
+                    frame.values[i] = addFile(frame.index, (String) entry);
+                }
+            }
+        }
+
+        // Give a directory the next index and return the frame that walks its entries
+        private DirectoryFrame open(Listing listing, List<int[]> directoryEntries, List<Listing> directoryListings) {
+            int index = directoryCount++;
+            directoryListings.add(listing);
+            directoryEntries.add(null); // Filled in once the subdirectories got their indexes
+            return new DirectoryFrame(listing, index);
+        }
+
+        // Progress through the entries of one directory while assigning ids
+        private static final class DirectoryFrame {
+            final Listing listing;
+            final int index;
+            final int[] values;
+            int next; // Next entry to assign
+
+            DirectoryFrame(Listing listing, int index) {
+                this.listing = listing;
+                this.index = index;
+                this.values = new int[listing.entries.size()];
+            }
+        }
+
+        // Write the record of one file and add it to the posting lists of its trigrams
+        private int addFile(int directory, String name) throws IOException {
+            int id = fileCount++;
+            int[] slot = intern(name);
+            files.out.writeInt(directory);
+            files.out.writeInt(slot[0]);
+            files.out.writeInt(slot[1]);
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                postings.computeIfAbsent(trigramKey(bytes, i), key -> new IntList()).addOnce(id);
+            }
+            return id;
+        }
+
+        // Store a string in the string section once and return its offset and length
+        private int[] intern(String value) {
+            return stringSlots.computeIfAbsent(value, key -> {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                int[] slot = {strings.size(), bytes.length};
+                strings.write(bytes, 0, bytes.length);
+                return slot;
+            });
+        }
+    }
+
+    // In-memory section of the index file with a DataOutputStream for writing it
+    private static final class SectionBuffer {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+    }
+
+    // Growable list of ascending file ids
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        // Append an id unless it is already the last one (a name can contain the same trigram twice)
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The FileIndex class maintains a persistent filename index per root directory so repeated searches do not
+ * have to walk the file system. The index is stored in a compact binary file that is memory-mapped for queries;
+ * substring queries are answered from a trigram table with delta-encoded posting lists and verified against the
+ * file names. Rebuilding an existing index only lists directories whose modification time has changed, and
+ * isFresh() lets FileManager.searchFiles fall back to a full walk whenever the tree changed since the last build.
+ */
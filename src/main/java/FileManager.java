@@ -1,15 +1,40 @@
 import java.io.*;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.*;
+import java.util.stream.Stream;
 
 public class FileManager {
 
     // Logger instance to record log messages for the FileManager class
     private static final Logger logger = Logger.getLogger(FileManager.class.getName());
+    // Cache of the directory listings shown by displayDirectoryContents; searches reuse listings it already holds
+    private static final DirectoryCache directoryCache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES);
+
+    // Chunked copier used for copyFile; large copies print their progress and can be resumed
+    private static final FileCopier fileCopier = new FileCopier(FileCopier.DEFAULT_CHUNK_SIZE, FileCopier.DEFAULT_VERIFY,
+            FileManager::printCopyProgress);
+
+    // Streaming lister used by displayDirectoryContents; the directories the user lists are kept in the directory cache
+    private static final DirectoryLister directoryLister = new DirectoryLister(directoryCache);
+
+    // Parallel deleter used for deleteDirectory and for the source of cross-file-system directory moves
+    private static final DirectoryDeleter directoryDeleter = new DirectoryDeleter(DirectoryDeleter.DEFAULT_THREADS);
+
+    // Per-operation counts, bytes, files, errors and latency histograms, published over JMX by Metrics
+    private static final OperationStats listStats = Metrics.operation("listDirectory");
+    private static final OperationStats copyStats = Metrics.operation("copyFile");
+    private static final OperationStats moveStats = Metrics.operation("moveFile");
+    private static final OperationStats deleteStats = Metrics.operation("deleteFile");
+    private static final OperationStats createDirectoryStats = Metrics.operation("createDirectory");
+    private static final OperationStats deleteDirectoryStats = Metrics.operation("deleteDirectory");
+    private static final OperationStats trashDirectoryStats = Metrics.operation("deleteDirectoryInBackground");
+    private static final OperationStats copyDirectoryStats = Metrics.operation("copyDirectory");
+    private static final OperationStats moveDirectoryStats = Metrics.operation("moveDirectory");
+    private static final OperationStats searchStats = Metrics.operation("searchFiles");
+    private static final OperationStats contentSearchStats = Metrics.operation("searchFileContents");
 
     // Static block to configure the logger settings from a properties file
     static {
@@ -22,48 +47,87 @@ public class FileManager {
         }
     }
 
+    // Method to finish background work before the program exits: waits for directories that are still being purged
+    // after deleteDirectoryInBackground, then releases the directory cache's watch service
+    public static void shutdown() {
+        directoryDeleter.shutdown();
+        directoryCache.close();
+    }
+
+    // Return the directory cache, e.g. to inspect its hit and miss counters
+    public static DirectoryCache getDirectoryCache() {
+        return directoryCache;
+    }
+
     // Method to display the contents of a directory specified by directoryPath
     public static void displayDirectoryContents(String directoryPath) {
-        // Create a File object representing the directory at the given path
-        File directory = new File(directoryPath);
+        displayDirectoryContents(directoryPath, DirectoryLister.SortOrder.NONE, 1, 0);
+    }
+
+    // Method to display one page of the contents of a directory in the given order.
+    // Pages are numbered from 1; a pageSize of 0 shows every entry on a single page.
+    public static void displayDirectoryContents(String directoryPath, DirectoryLister.SortOrder order, int page,
+                                                int pageSize) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        // Create a Path object representing the directory at the given path
+        Path directory = Paths.get(directoryPath);
 
         // Check if the provided path is not a directory
-        if (!directory.isDirectory()) {
+        if (!Files.isDirectory(directory)) {
             // Print a message indicating the path is not a directory
             System.out.println("The path specified is not a directory.");
             // Log a warning that an invalid directory path was provided
-            logger.warning("Attempted to display contents of a non-directory: " + directoryPath);
+            logger.log(Level.WARNING, "Attempted to display contents of a non-directory: {0}", directoryPath);
+            listStats.failed(start);
             return; // Exit the method as there is nothing more to do
         }
 
-        // Retrieve an array of File objects representing all files and directories within the directory
-        File[] files = directory.listFiles();
-
-        // Check if the directory contents could be retrieved
-        if (files != null) {
-            // Print the directory path and start listing the contents
-            System.out.println("Contents of directory: " + directoryPath);
-            for (File file : files) { // Iterate over each file or directory in the array
-                String name = file.getName(); // Get the name of the file or directory
-                long size = file.length(); // Get the size of the file in bytes
-                // Format the last modified time of the file or directory using a specific date-time pattern
-                String lastModified = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(file.lastModified());
-                // Print the file name, size, and last modified time in a formatted manner
-                System.out.printf("%-20s %-10d %-20s%n", name, size, lastModified);
+        // Work out which entries belong to the requested page
+        long skip = pageSize > 0 ? (long) (Math.max(page, 1) - 1) * pageSize : 0;
+        long limit = pageSize > 0 ? pageSize : Long.MAX_VALUE;
+
+        // Write the listing through one large buffer instead of printing it line by line
+        Writer out = DirectoryLister.consoleWriter();
+        boolean succeeded = false; // Set once the listing has been written
+        long shown = 0; // Entries written to the console
+        try {
+            // Print the directory path and stream the entries, from the directory cache when it holds the listing
+            out.write("Contents of directory: " + directoryPath + System.lineSeparator());
+            shown = directoryLister.list(directory, order, skip, limit, out);
+            if (pageSize > 0) {
+                // Tell the user which part of the directory the page covers
+                out.write(shown == 0 ? "No entries on page " + page + "." + System.lineSeparator()
+                        : "Page " + page + ": entries " + (skip + 1) + "-" + (skip + shown) + System.lineSeparator());
             }
+            out.flush(); // Send the rest of the buffered listing to the console
             // Log an informational message that the directory contents were displayed
-            logger.info("Displayed contents of directory: " + directoryPath);
-        } else {
+            logger.log(Level.INFO, "Displayed contents of directory: {0}", directoryPath);
+            succeeded = true; // Record that the operation completed
+        } catch (IOException e) {
+            flushQuietly(out); // Keep the entries listed before the failure
             // Print a message indicating that the directory contents could not be accessed
             System.out.println("Unable to access directory contents.");
             // Log a warning message that the directory contents could not be accessed
-            logger.warning("Failed to access directory contents: " + directoryPath);
+            logger.log(Level.WARNING, "Failed to access directory contents: {0}", directoryPath);
         }
+        listStats.finish(start, succeeded, 0, shown);
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
     }
 
-    // Method to copy a file from sourcePath to destinationPath
-    public static void copyFile(String sourcePath, String destinationPath) {
+    // Flush a console writer after an error, ignoring a second failure
+    private static void flushQuietly(Writer out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // Nothing more can be shown
+        }
+    }
+
+    // Method to copy a file from sourcePath to destinationPath, returning true if it succeeded
+    public static boolean copyFile(String sourcePath, String destinationPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        long bytesCopied = 0; // Bytes written by this call; less than the file size when a copy is resumed
         // Create Path objects representing the source file and destination path
         Path source = Paths.get(sourcePath);
         Path destination = Paths.get(destinationPath);
@@ -74,8 +138,8 @@ public class FileManager {
                 // Print an error message if the source file does not exist
                 System.err.println("Source file does not exist: " + sourcePath);
                 // Log a warning that an attempt was made to copy from a non-existent source
-                logger.warning("Attempted to copy from a non-existent source: " + sourcePath);
-                return; // Exit the method since the copy operation cannot proceed
+                logger.log(Level.WARNING, "Attempted to copy from a non-existent source: {0}", sourcePath);
+                return copyStats.failed(start); // Exit the method since the copy operation cannot proceed
             }
 
             // Check if the destination path is a directory
@@ -84,33 +148,51 @@ public class FileManager {
                 destination = destination.resolve(source.getFileName());
             }
 
-            // Perform the file copy, replacing any existing file at the destination
-            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            // Perform the file copy in resumable chunks, replacing any existing file at the destination
+            bytesCopied = fileCopier.copy(source, destination);
+            // Drop the cached listing of the destination directory right away
+            directoryCache.invalidate(destination);
             // Print a message indicating the file was copied successfully
             System.out.println("File copied successfully.");
             // Log an informational message that the file was copied from the source to the destination
-            logger.info("Copied file from " + source + " to " + destination);
+            logger.log(Level.INFO, "Copied file from {0} to {1}", new Object[]{source, destination});
+            succeeded = true; // Record that the operation completed
         } catch (FileAlreadyExistsException e) {
             // Handle the case where the destination file already exists
             System.err.println("Destination file already exists: " + destination);
             // Log a warning that the copy operation failed because the destination file already exists
-            logger.warning("Failed to copy because the destination file already exists: " + destination);
+            logger.log(Level.WARNING, "Failed to copy because the destination file already exists: {0}", destination);
         } catch (DirectoryNotEmptyException e) {
             // Handle the case where the destination directory is not empty
             System.err.println("Destination directory is not empty: " + destination);
             // Log a warning that the copy operation failed because the destination directory is not empty
-            logger.warning("Failed to copy because the destination directory is not empty: " + destination);
+            logger.log(Level.WARNING, "Failed to copy because the destination directory is not empty: {0}",
+                    destination);
         } catch (IOException e) {
             // Handle other I/O exceptions that may occur during the copy operation
             System.err.println("Error copying file: " + e.getMessage());
             // Log a severe error indicating that the file copy operation failed
-            logger.severe("Failed to copy file from " + source + " to " + destination + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to copy file from {0} to {1} - {2}",
+                    new Object[]{source, destination, e.getMessage()});
         }
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return copyStats.finish(start, succeeded, bytesCopied, 1);
     }
 
-    // Method to move a file from sourcePath to destinationPath
-    public static void moveFile(String sourcePath, String destinationPath) {
+    // Print the progress of a chunked copy on a single console line
+    private static void printCopyProgress(long bytesCopied, long totalBytes, double bytesPerSecond) {
+        final double mb = 1024.0 * 1024.0;
+        System.out.printf("\rCopied %.1f of %.1f MB (%.1f MB/s)", bytesCopied / mb, totalBytes / mb, bytesPerSecond / mb);
+        if (bytesCopied == totalBytes) {
+            System.out.println(); // Finish the progress line once the copy is complete
+        }
+        System.out.flush();
+    }
+
+    // Method to move a file from sourcePath to destinationPath, returning true if it succeeded
+    public static boolean moveFile(String sourcePath, String destinationPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
         // Create Path objects representing the source file and destination path
         Path source = Paths.get(sourcePath);
         Path destination = Paths.get(destinationPath);
@@ -121,8 +203,8 @@ public class FileManager {
                 // Print an error message if the source file does not exist
                 System.err.println("Source file does not exist: " + sourcePath);
                 // Log a warning that an attempt was made to move a non-existent source
-                logger.warning("Attempted to move a non-existent source: " + sourcePath);
-                return; // Exit the method since the move operation cannot proceed
+                logger.log(Level.WARNING, "Attempted to move a non-existent source: {0}", sourcePath);
+                return moveStats.failed(start); // Exit the method since the move operation cannot proceed
             }
 
             // Check if the destination path is a directory
@@ -133,145 +215,559 @@ public class FileManager {
 
             // Perform the file move, replacing any existing file at the destination
             Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            // Drop the cached listings of both the source and the destination directory right away
+            directoryCache.invalidate(source);
+            directoryCache.invalidate(destination);
             // Print a message indicating the file was moved successfully
             System.out.println("File moved successfully.");
             // Log an informational message that the file was moved from the source to the destination
-            logger.info("Moved file from " + source + " to " + destination);
+            logger.log(Level.INFO, "Moved file from {0} to {1}", new Object[]{source, destination});
+            succeeded = true; // Record that the operation completed
         } catch (FileAlreadyExistsException e) {
             // Handle the case where the destination file already exists
             System.err.println("Destination file already exists: " + destination);
             // Log a warning that the move operation failed because the destination file already exists
-            logger.warning("Failed to move because the destination file already exists: " + destination);
+            logger.log(Level.WARNING, "Failed to move because the destination file already exists: {0}", destination);
         } catch (DirectoryNotEmptyException e) {
             // Handle the case where the destination directory is not empty
             System.err.println("Destination directory is not empty: " + destination);
             // Log a warning that the move operation failed because the destination directory is not empty
-            logger.warning("Failed to move because the destination directory is not empty: " + destination);
+            logger.log(Level.WARNING, "Failed to move because the destination directory is not empty: {0}",
+                    destination);
         } catch (IOException e) {
             // Handle other I/O exceptions that may occur during the move operation
             System.err.println("Error moving file: " + e.getMessage());
             // Log a severe error indicating that the file move operation failed
-            logger.severe("Failed to move file from " + source + " to " + destination + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to move file from {0} to {1} - {2}",
+                    new Object[]{source, destination, e.getMessage()});
         }
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return moveStats.finish(start, succeeded, 0, 1);
     }
 
-    // Method to delete a file at the given filePath
-    public static void deleteFile(String filePath) {
+    // Method to delete a file at the given filePath, returning true if it succeeded
+    public static boolean deleteFile(String filePath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
         try {
             // Delete the file at the specified filePath
             Files.delete(Paths.get(filePath));
+            // Drop the cached listing of the parent directory right away
+            directoryCache.invalidate(Paths.get(filePath));
             // Print a message indicating the file was deleted successfully
             System.out.println("File deleted successfully.");
             // Log an informational message that the file was deleted
-            logger.info("Deleted file " + filePath);
+            logger.log(Level.INFO, "Deleted file {0}", filePath);
+            succeeded = true; // Record that the operation completed
         } catch (NoSuchFileException e) {
             // Handle the case where the file does not exist
             System.err.println("File does not exist: " + filePath);
             // Log a warning that an attempt was made to delete a non-existent file
-            logger.warning("Attempted to delete a non-existent file: " + filePath);
+            logger.log(Level.WARNING, "Attempted to delete a non-existent file: {0}", filePath);
         } catch (DirectoryNotEmptyException e) {
             // Handle the case where the path points to a non-empty directory instead of a file
             System.err.println("Directory is not empty: " + filePath);
             // Log a warning that the deletion failed because the directory is not empty
-            logger.warning("Attempted to delete a non-empty directory as a file: " + filePath);
+            logger.log(Level.WARNING, "Attempted to delete a non-empty directory as a file: {0}", filePath);
         } catch (IOException e) {
             // Handle other I/O exceptions that may occur during the delete operation
             System.err.println("Error deleting file: " + e.getMessage());
             // Log a severe error indicating that the file deletion failed
-            logger.severe("Failed to delete file " + filePath + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to delete file {0} - {1}", new Object[]{filePath, e.getMessage()});
         }
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return deleteStats.finish(start, succeeded, 0, 1);
     }
 
-    // Method to create a directory at the given directoryPath
-    public static void createDirectory(String directoryPath) {
+    // Method to create a directory at the given directoryPath, returning true if it succeeded
+    public static boolean createDirectory(String directoryPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
         try {
             // Create a new directory at the specified directoryPath
             Files.createDirectory(Paths.get(directoryPath));
+            // Drop the cached listing of the parent directory right away
+            directoryCache.invalidate(Paths.get(directoryPath));
             // Print a message indicating the directory was created successfully
             System.out.println("Directory created successfully.");
             // Log an informational message that the directory was created
-            logger.info("Created directory " + directoryPath);
+            logger.log(Level.INFO, "Created directory {0}", directoryPath);
+            succeeded = true; // Record that the operation completed
         } catch (FileAlreadyExistsException e) {
             // Handle the case where the directory already exists
             System.err.println("Directory already exists: " + directoryPath);
             // Log a warning that an attempt was made to create an existing directory
-            logger.warning("Attempted to create a directory that already exists: " + directoryPath);
+            logger.log(Level.WARNING, "Attempted to create a directory that already exists: {0}", directoryPath);
         } catch (IOException e) {
             // Handle other I/O exceptions that may occur during the directory creation
             System.err.println("Error creating directory: " + e.getMessage());
             // Log a severe error indicating that the directory creation failed
-            logger.severe("Failed to create directory " + directoryPath + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to create directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
         }
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return createDirectoryStats.finish(start, succeeded, 0, 1);
     }
 
-    // Method to delete a directory and its contents at the given directoryPath
-    public static void deleteDirectory(String directoryPath) {
+    // Method to delete a directory and its contents at the given directoryPath, returning true if it succeeded
+    public static boolean deleteDirectory(String directoryPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        long deleted = 0; // Files and directories removed, including directoryPath itself
         try {
-            // Walk the file tree starting from the directoryPath and visit each file and directory
-            Files.walkFileTree(Paths.get(directoryPath), new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    // Delete each file in the directory
-                    Files.delete(file);
-                    return FileVisitResult.CONTINUE; // Continue to the next file
-                }
-
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    // Delete the directory itself after all its contents have been deleted
-                    Files.delete(dir);
-                    return FileVisitResult.CONTINUE; // Continue after the directory is deleted
-                }
-            });
+            // Delete every file and directory below directoryPath in parallel, then the directory itself
+            deleted = directoryDeleter.delete(Paths.get(directoryPath));
             // Print a message indicating the directory was deleted successfully
             System.out.println("Directory deleted successfully.");
             // Log an informational message that the directory was deleted
-            logger.info("Deleted directory " + directoryPath);
+            logger.log(Level.INFO, "Deleted directory {0}", directoryPath);
+            succeeded = true; // Record that the operation completed
         } catch (NoSuchFileException e) {
             // Handle the case where the directory does not exist
             System.err.println("Directory does not exist: " + directoryPath);
             // Log a warning that an attempt was made to delete a non-existent directory
-            logger.warning("Attempted to delete a non-existent directory: " + directoryPath);
+            logger.log(Level.WARNING, "Attempted to delete a non-existent directory: {0}", directoryPath);
         } catch (DirectoryNotEmptyException e) {
             // Handle the case where the directory is not empty
             System.err.println("Directory is not empty: " + directoryPath);
             // Log a warning that the directory deletion failed because it is not empty
-            logger.warning("Failed to delete because the directory is not empty: " + directoryPath);
+            logger.log(Level.WARNING, "Failed to delete because the directory is not empty: {0}", directoryPath);
         } catch (IOException e) {
             // Handle other I/O exceptions that may occur during the directory deletion
             System.err.println("Error deleting directory: " + e.getMessage());
             // Log a severe error indicating that the directory deletion failed
-            logger.severe("Failed to delete directory " + directoryPath + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to delete directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+        }
+        // Drop the cached listings of the directory, its subtree and its parent, even after a partial deletion
+        directoryCache.invalidate(Paths.get(directoryPath));
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return deleteDirectoryStats.finish(start, succeeded, 0, deleted);
+    }
+
+    // Method to delete a directory by moving it into a hidden trash directory and purging that in the background, returning true if it succeeded
+    public static boolean deleteDirectoryInBackground(String directoryPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        try {
+            // Move the directory out of the way; the actual deletion runs on a background thread
+            Path trash = directoryDeleter.deleteInBackground(Paths.get(directoryPath));
+            // Print a message indicating the directory is gone from its original location
+            System.out.println("Directory moved to trash, deleting in the background.");
+            // Log an informational message that the directory was trashed
+            logger.log(Level.INFO, "Moved directory {0} to {1} for background deletion",
+                    new Object[]{directoryPath, trash});
+            succeeded = true; // Record that the operation completed
+        } catch (NoSuchFileException e) {
+            // Handle the case where the directory does not exist
+            System.err.println("Directory does not exist: " + directoryPath);
+            // Log a warning that an attempt was made to delete a non-existent directory
+            logger.log(Level.WARNING, "Attempted to delete a non-existent directory: {0}", directoryPath);
+        } catch (IOException e) {
+            // Handle other I/O exceptions that may occur while renaming the directory
+            System.err.println("Error deleting directory: " + e.getMessage());
+            // Log a severe error indicating that the directory could not be moved to the trash
+            logger.log(Level.SEVERE, "Failed to move directory {0} to trash - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
         }
+        // Drop the cached listings of the directory, its subtree and its parent right away
+        directoryCache.invalidate(Paths.get(directoryPath));
         System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return trashDirectoryStats.finish(start, succeeded, 0, 1);
+    }
+
+    // Method to copy a directory tree from sourcePath to destinationPath, returning true if it succeeded
+    public static boolean copyDirectory(String sourcePath, String destinationPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        DirectoryCopier.Result result = null; // Files and bytes copied, once the tree has been copied
+        // Create Path objects representing the source directory and destination path
+        Path source = Paths.get(sourcePath);
+        Path destination = Paths.get(destinationPath);
+
+        try {
+            // Check if the source directory exists
+            if (!Files.isDirectory(source)) {
+                // Print an error message if the source is not a directory
+                System.err.println("Source directory does not exist: " + sourcePath);
+                // Log a warning that an attempt was made to copy a non-existent directory
+                logger.log(Level.WARNING, "Attempted to copy a non-existent directory: {0}", sourcePath);
+                return copyDirectoryStats.failed(start); // Exit the method since the copy operation cannot proceed
+            }
+
+            // Copy into an existing destination directory, like copyFile does
+            if (Files.isDirectory(destination)) {
+                destination = destination.resolve(source.getFileName());
+            }
+
+            // Copy the tree in parallel with the thread count configured for the destination device
+            result = newDirectoryCopier(destination).copy(source, destination);
+            // Drop the cached listings of the destination tree right away
+            directoryCache.invalidate(destination);
+            // Print a message indicating the directory was copied successfully
+            System.out.println("Directory copied successfully: " + result.getFiles() + " files, "
+                    + result.getBytes() + " bytes.");
+            // Log an informational message that the directory was copied from the source to the destination
+            logger.log(Level.INFO, "Copied directory from {0} to {1}", new Object[]{source, destination});
+            succeeded = true; // Record that the operation completed
+        } catch (IOException e) {
+            // Files that were copied before the failure are visible, so the cache must forget the destination
+            directoryCache.invalidate(destination);
+            // Handle I/O exceptions that may occur during the copy operation
+            System.err.println("Error copying directory: " + e.getMessage());
+            // Log a severe error indicating that the directory copy operation failed
+            logger.log(Level.SEVERE, "Failed to copy directory from {0} to {1} - {2}",
+                    new Object[]{source, destination, e.getMessage()});
+        }
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return copyDirectoryStats.finish(start, succeeded, result == null ? 0 : result.getBytes(),
+                result == null ? 0 : result.getFiles());
+    }
+
+    // Method to move a directory tree from sourcePath to destinationPath, returning true if it succeeded
+    public static boolean moveDirectory(String sourcePath, String destinationPath) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        DirectoryCopier.Result result = null; // Files and bytes copied, once the tree has been copied
+        // Create Path objects representing the source directory and destination path
+        Path source = Paths.get(sourcePath);
+        Path destination = Paths.get(destinationPath);
+
+        try {
+            // Check if the source directory exists
+            if (!Files.isDirectory(source)) {
+                // Print an error message if the source is not a directory
+                System.err.println("Source directory does not exist: " + sourcePath);
+                // Log a warning that an attempt was made to move a non-existent directory
+                logger.log(Level.WARNING, "Attempted to move a non-existent directory: {0}", sourcePath);
+                return moveDirectoryStats.failed(start); // Exit the method since the move operation cannot proceed
+            }
+
+            // Move into an existing destination directory, like moveFile does
+            if (Files.isDirectory(destination)) {
+                destination = destination.resolve(source.getFileName());
+            }
+
+            try {
+                // A rename is enough when source and destination are on the same file system
+                Files.move(source, destination);
+            } catch (DirectoryNotEmptyException e) {
+                // The directory has to be moved across file systems: copy the tree in parallel, then delete the source
+                result = newDirectoryCopier(destination).copy(source, destination);
+                directoryDeleter.delete(source);
+            }
+            // Drop the cached listings of both trees right away
+            directoryCache.invalidate(source);
+            directoryCache.invalidate(destination);
+            // Print a message indicating the directory was moved successfully
+            System.out.println("Directory moved successfully.");
+            // Log an informational message that the directory was moved from the source to the destination
+            logger.log(Level.INFO, "Moved directory from {0} to {1}", new Object[]{source, destination});
+            succeeded = true; // Record that the operation completed
+        } catch (FileAlreadyExistsException e) {
+            // Handle the case where the destination already exists
+            System.err.println("Destination already exists: " + destination);
+            // Log a warning that the move operation failed because the destination already exists
+            logger.log(Level.WARNING, "Failed to move because the destination already exists: {0}", destination);
+        } catch (IOException e) {
+            // Either tree may have been changed partially, so the cache must forget both
+            directoryCache.invalidate(source);
+            directoryCache.invalidate(destination);
+            // Handle other I/O exceptions that may occur during the move operation
+            System.err.println("Error moving directory: " + e.getMessage());
+            // Log a severe error indicating that the directory move operation failed
+            logger.log(Level.SEVERE, "Failed to move directory from {0} to {1} - {2}",
+                    new Object[]{source, destination, e.getMessage()});
+        }
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        // A rename transfers no bytes; only a copy across file systems is counted
+        return moveDirectoryStats.finish(start, succeeded, result == null ? 0 : result.getBytes(),
+                result == null ? 0 : result.getFiles());
+    }
+
+    // Create a directory copier tuned for the device that holds the destination
+    private static DirectoryCopier newDirectoryCopier(Path destination) {
+        // Large files inside a tree are copied without a console progress line, since several run at once
+        return new DirectoryCopier(DirectoryCopier.threadsFor(destination), new FileCopier());
     }
 
+    // Shared parallel searcher used by searchFiles when no parallelism level is given; counts the entries it visits
+    private static final ParallelFileSearcher defaultSearcher =
+            new ParallelFileSearcher(ParallelFileSearcher.DEFAULT_PARALLELISM, directoryCache, searchStats);
+
     // Method to search for files in a directory that match the searchQuery
     public static List<String> searchFiles(String directoryPath, String searchQuery) {
-        List<String> matchedFiles = new ArrayList<>(); // List to store matched file paths
-
-        // Open a directory stream to iterate over the files and directories in the specified directory
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directoryPath))) {
-            for (Path entry : stream) { // Iterate over each entry in the directory
-                if (Files.isDirectory(entry)) { // If the entry is a directory
-                    // Recursively search for files in the subdirectory
-                    matchedFiles.addAll(searchFiles(entry.toString(), searchQuery));
-                } else if (entry.getFileName().toString().contains(searchQuery)) { // If the file name contains the search query
-                    matchedFiles.add(entry.toString()); // Add the matching file path to the list
+        // Answer from the persistent index when one exists and the tree has not changed since it was built
+        List<String> indexedResults = searchIndex(directoryPath, searchQuery);
+        if (indexedResults != null) {
+            return indexedResults;
+        }
+        return searchFiles(directoryPath, SearchQuery.nameContains(searchQuery), defaultSearcher);
+    }
+
+    // Method to search for entries in a directory that match a query with name, size, time, type and depth
+    // conditions; the query is evaluated during the walk and excluded subtrees are skipped entirely
+    public static List<String> searchFiles(String directoryPath, SearchQuery query) {
+        return searchFiles(directoryPath, query, defaultSearcher);
+    }
+
+    // Method to search for files in a directory that match the searchQuery using the given number of worker threads
+    public static List<String> searchFiles(String directoryPath, String searchQuery, int parallelism) {
+        ParallelFileSearcher searcher = new ParallelFileSearcher(parallelism, null, searchStats);
+        try {
+            return searchFiles(directoryPath, SearchQuery.nameContains(searchQuery), searcher);
+        } finally {
+            searcher.shutdown(); // Release the worker threads created for this search
+        }
+    }
+
+    // Method to search for files that match the searchQuery and return them lazily as they are found, or from the
+    // persistent index while it is up to date. At most maxResults paths are produced (1 for first-match-only);
+    // closing the stream cancels the search, and callers must close it (e.g. with try-with-resources).
+    public static Stream<Path> streamFiles(String directoryPath, String searchQuery, long maxResults) {
+        // Answer from the persistent index when one exists and the tree has not changed since it was built
+        List<String> indexedResults = searchIndex(directoryPath, searchQuery);
+        if (indexedResults != null) {
+            return indexedResults.stream().limit(maxResults).map(Paths::get);
+        }
+        return streamFiles(directoryPath, SearchQuery.nameContains(searchQuery), maxResults);
+    }
+
+    // Method to search for entries that match a query and return them lazily as they are found; the caller must
+    // close the stream, which cancels the search and releases the walker threads
+    public static Stream<Path> streamFiles(String directoryPath, SearchQuery query, long maxResults) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        try {
+            // Start the parallel walk; matches are handed to the stream while the walk is still running.
+            // The search is timed until the caller closes the stream.
+            Stream<Path> results = defaultSearcher.stream(directoryPath, query, maxResults)
+                    .onClose(() -> searchStats.finish(start, true, 0, 0));
+            // Log an informational message that the search was started
+            logger.log(Level.INFO, "Streaming search in directory: {0} with query: {1}",
+                    new Object[]{directoryPath, query});
+            return results;
+        } catch (IOException e) {
+            // Handle I/O exceptions that may occur when opening the root directory
+            System.err.println("Error searching files: " + e.getMessage());
+            // Log a severe error indicating that the file search failed
+            logger.log(Level.SEVERE, "Failed to search files in directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+        }
+        searchStats.failed(start);
+        return Stream.empty(); // Return an empty stream when the root directory could not be searched
+    }
+
+    // Parallel content searcher used by searchFileContents
+    private static final ContentSearcher contentSearcher = new ContentSearcher(ParallelFileSearcher.DEFAULT_PARALLELISM,
+            ContentSearcher.DEFAULT_MAX_FILE_SIZE, directoryCache);
+
+    // Method to search the files below directoryPath for lines containing searchText and print each match
+    // as path:line:snippet as soon as it is found. Returns the number of matches printed.
+    public static long searchFileContents(String directoryPath, String searchText, long maxResults) {
+        if (searchText.isEmpty()) {
+            // Print an error message, since every line would match an empty text
+            System.err.println("Search text must not be empty.");
+            return 0;
+        }
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        boolean succeeded = false; // Set once the operation has completed
+        long matches = 0; // Number of matches printed
+        long filesVisited = 0; // Files scanned or skipped
+        try {
+            // Scan the files in parallel and print the matches while the search is still running
+            ContentSearcher.Result result = contentSearcher.search(Paths.get(directoryPath), searchText, maxResults,
+                    System.out::println);
+            matches = result.getMatches();
+            filesVisited = result.getFilesScanned() + result.getFilesSkipped();
+            // Print how much of the tree was searched
+            System.out.println(matches + " matches in " + result.getFilesScanned() + " files ("
+                    + result.getFilesSkipped() + " binary, large or unreadable files skipped).");
+            // Log an informational message that the content search was completed
+            logger.log(Level.INFO, "Searched file contents in directory: {0} for text: {1}",
+                    new Object[]{directoryPath, searchText});
+            succeeded = true; // Record that the operation completed
+        } catch (NoSuchFileException e) {
+            // Handle the case where the directory does not exist
+            System.err.println("Directory does not exist: " + directoryPath);
+            // Log a warning that a search was attempted in a non-existent directory
+            logger.log(Level.WARNING, "Attempted to search the contents of a non-existent path: {0}", directoryPath);
+        } catch (IOException e) {
+            // Handle other I/O exceptions that may occur when opening the root
+            System.err.println("Error searching file contents: " + e.getMessage());
+            // Log a severe error indicating that the content search failed
+            logger.log(Level.SEVERE, "Failed to search file contents in directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+        }
+        contentSearchStats.finish(start, succeeded, 0, filesVisited);
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return matches;
+    }
+
+    // Duplicate finder used by findDuplicates; its hash cache makes repeated runs over the same tree incremental
+    private static final DuplicateFinder duplicateFinder = new DuplicateFinder(DuplicateFinder.DEFAULT_THREADS);
+
+    // Method to find groups of files with identical content below directoryPath and print them,
+    // largest reclaimable space first. Returns the groups, or an empty list if the tree could not be searched.
+    public static List<DuplicateFinder.Group> findDuplicates(String directoryPath) {
+        try {
+            // Narrow the candidates down by size, then by a partial hash, then by a full hash
+            List<DuplicateFinder.Group> groups = duplicateFinder.find(Paths.get(directoryPath));
+            long reclaimable = 0;
+            for (DuplicateFinder.Group group : groups) {
+                // Print each group; the first file is the one kept when duplicates are removed
+                System.out.println("Identical files (" + group.getSize() + " bytes each):");
+                for (Path file : group.getFiles()) {
+                    System.out.println("  " + file);
                 }
+                reclaimable += group.getReclaimableBytes();
             }
+            // Print a summary of the space that can be reclaimed
+            System.out.println(groups.size() + " groups of duplicates, " + reclaimable + " bytes reclaimable ("
+                    + duplicateFinder.getHashesComputed() + " hashes computed, the rest answered from the hash cache).");
+            // Log an informational message that the duplicate search was completed
+            logger.log(Level.INFO, "Found {0,number,#} groups of duplicates in directory {1}",
+                    new Object[]{groups.size(), directoryPath});
+            System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+            return groups;
+        } catch (NoSuchFileException e) {
+            // Handle the case where the directory does not exist
+            System.err.println("Directory does not exist: " + directoryPath);
+            // Log a warning that a duplicate search was attempted in a non-existent directory
+            logger.log(Level.WARNING, "Attempted to find duplicates in a non-existent directory: {0}", directoryPath);
+        } catch (IOException e) {
+            // Handle other I/O exceptions that may occur during the search
+            System.err.println("Error finding duplicates: " + e.getMessage());
+            // Log a severe error indicating that the duplicate search failed
+            logger.log(Level.SEVERE, "Failed to find duplicates in directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+        }
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return new ArrayList<>();
+    }
+
+    // Method to remove the duplicates found by findDuplicates, keeping the first file of every group.
+    // Each duplicate is deleted through deleteFile; with hardLink it is first replaced by a hard link to the kept
+    // file, so every path stays valid. Files that changed since they were hashed are left alone.
+    // Returns the number of bytes reclaimed.
+    public static long removeDuplicates(List<DuplicateFinder.Group> groups, boolean hardLink) {
+        long reclaimed = 0;
+        for (DuplicateFinder.Group group : groups) {
+            List<Path> files = group.getFiles();
+            Path keeper = files.get(0);
+            for (Path duplicate : files.subList(1, files.size())) {
+                // Never remove a file whose content may no longer match the kept copy
+                if (!group.isUnchanged(keeper) || !group.isUnchanged(duplicate)) {
+                    System.err.println("File changed since it was compared, skipping: " + duplicate);
+                    logger.log(Level.WARNING, "Skipped duplicate that changed since it was hashed: {0}", duplicate);
+                    continue;
+                }
+                if (hardLink ? replaceWithLink(duplicate, keeper) : deleteFile(duplicate.toString())) {
+                    reclaimed += group.getSize();
+                }
+            }
+        }
+        // Print how much space was freed
+        System.out.println("Reclaimed " + reclaimed + " bytes.");
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+        return reclaimed;
+    }
+
+    // Replace duplicate by a hard link to keeper: link under a temporary name, delete the duplicate through
+    // deleteFile, then give the link the duplicate's name
+    private static boolean replaceWithLink(Path duplicate, Path keeper) {
+        Path link = duplicate.resolveSibling(duplicate.getFileName() + ".link-" + System.nanoTime());
+        try {
+            Files.createLink(link, keeper);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Handle file systems without hard links, or a keeper on a different file system
+            System.err.println("Cannot hard-link " + duplicate + " to " + keeper + ": " + e.getMessage());
+            logger.log(Level.WARNING, "Failed to hard-link {0} to {1} - {2}",
+                    new Object[]{duplicate, keeper, e.getMessage()});
+            return false;
+        }
+        try {
+            if (!deleteFile(duplicate.toString())) {
+                Files.deleteIfExists(link); // Leave the tree as it was
+                return false;
+            }
+            Files.move(link, duplicate, StandardCopyOption.ATOMIC_MOVE);
+            // Drop the cached listing of the directory that now holds the link
+            directoryCache.invalidate(duplicate);
+            logger.log(Level.INFO, "Replaced duplicate {0} with a hard link to {1}", new Object[]{duplicate, keeper});
+            return true;
+        } catch (IOException e) {
+            // Handle failures to clean up or rename the link; the content is still reachable through keeper and link
+            System.err.println("Error linking duplicate: " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to replace duplicate {0} with a hard link - {1}",
+                    new Object[]{duplicate, e.getMessage()});
+            return false;
+        }
+    }
+
+    // Method to build the filename index of a directory tree, or refresh it if it already exists
+    public static void buildIndex(String directoryPath) {
+        try {
+            // Only directories whose modification time changed since the last build are listed again
+            FileIndex index = FileIndex.build(directoryPath);
+            // Print a summary of the indexed tree
+            System.out.println("Index built: " + index.getFileCount() + " files in " + index.getDirectoryCount()
+                    + " directories (" + index.getRescannedDirectories() + " directories scanned).");
+            // Log an informational message that the index was built
+            logger.log(Level.INFO, "Built index of directory {0} with {1,number,#} files",
+                    new Object[]{directoryPath, index.getFileCount()});
+        } catch (IOException e) {
+            // Handle I/O exceptions that may occur while walking the tree or writing the index
+            System.err.println("Error building index: " + e.getMessage());
+            // Log a severe error indicating that the index could not be built
+            logger.log(Level.SEVERE, "Failed to build index of directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+        }
+        System.out.flush(); // Ensure that any buffered output is sent to the console immediately
+    }
+
+    // Search the persistent index of directoryPath; returns null if there is no fresh index to search
+    private static List<String> searchIndex(String directoryPath, String searchQuery) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        try {
+            FileIndex index = FileIndex.load(directoryPath);
+            if (index == null || !index.isFresh()) {
+                return null; // No index, or the tree changed since it was built
+            }
+            List<String> matchedFiles = index.search(searchQuery);
+            searchStats.finish(start, true, 0, index.getFileCount());
+            // Log an informational message that the search was answered from the index
+            logger.log(Level.INFO, "Searched index of directory: {0} with query: {1}",
+                    new Object[]{directoryPath, searchQuery});
+            return matchedFiles;
+        } catch (IOException e) {
+            // An unreadable index is not fatal; fall back to walking the tree
+            logger.log(Level.WARNING, "Failed to read index of directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
+            return null;
+        }
+    }
+
+    // Run the search on the given searcher and handle errors on the root directory
+    private static List<String> searchFiles(String directoryPath, SearchQuery query, ParallelFileSearcher searcher) {
+        long start = System.nanoTime(); // Start of the operation, for its latency histogram
+        try {
+            // Walk the directory tree in parallel, one fork-join task per subdirectory
+            List<String> matchedFiles = searcher.search(directoryPath, query);
             // Log an informational message that the search was completed
-            logger.info("Searched files in directory: " + directoryPath + " with query: " + searchQuery);
+            logger.log(Level.INFO, "Searched files in directory: {0} with query: {1}",
+                    new Object[]{directoryPath, query});
+            // The searcher has already added the entries it visited
+            searchStats.finish(start, true, 0, 0);
+            return matchedFiles; // Return the list of matched files
         } catch (IOException e) {
             // Handle I/O exceptions that may occur during the search
             System.err.println("Error searching files: " + e.getMessage());
             // Log a severe error indicating that the file search failed
-            logger.severe("Failed to search files in directory " + directoryPath + " - " + e.getMessage());
+            logger.log(Level.SEVERE, "Failed to search files in directory {0} - {1}",
+                    new Object[]{directoryPath, e.getMessage()});
         }
-        return matchedFiles; // Return the list of matched files
+        searchStats.failed(start);
+        return new ArrayList<>(); // Return an empty list when the root directory could not be searched
     }
 }
 
@@ -280,8 +776,17 @@ public class FileManager {
  * The FileManager class provides utility methods for managing files and directories, including:
  * - Displaying directory contents
  * - Copying, moving, and deleting files
- * - Creating and deleting directories
- * - Searching for files within a directory
+ * - Creating and deleting directories, deleting large trees in parallel or in the background via DirectoryDeleter
+ * - Copying and moving whole directory trees in parallel via DirectoryCopier
+ * - Searching for files within a directory, in parallel via ParallelFileSearcher, either as a list or as a lazy stream,
+ *   by name substring or by a SearchQuery with glob, regex, size, time, type and depth filters
+ * - Searching the contents of files in parallel via ContentSearcher, printing path:line:snippet for each match
+ * - Finding files with identical content via DuplicateFinder and deleting or hard-linking the extra copies
+ * - Building a persistent filename index (FileIndex) that answers searches while the tree is unchanged
+ * Large file copies go through FileCopier, which copies in checkpointed chunks and reports progress.
+ * Directory listings are served from a watch-service backed DirectoryCache that every modifying operation invalidates.
+ * Every operation records its count, errors, bytes, files visited and latency in an OperationStats from Metrics,
+ * which publishes them as JMX MBeans and in a periodic snapshot file.
  * The class uses a logger to record information, warnings, and errors during file operations.
  * Each method handles common file system errors, such as non-existent files or directories, and logs appropriate messages.
  */
@@ -0,0 +1,98 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    // Every power-of-two range of values is split into this many linear buckets (HDR histogram layout), so a
+    // recorded value is off by at most 1/64 (about 1.6%) of itself, however large it is
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values below 2 * SUB_BUCKETS are counted exactly; each further power of two adds SUB_BUCKETS buckets
+    private static final int BUCKET_COUNT = 2 * SUB_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Record one value, e.g. a latency in nanoseconds; negative values are counted as 0
+    public void record(long value) {
+        long clamped = Math.max(value, 0);
+        counts.incrementAndGet(index(clamped));
+        total.incrementAndGet();
+        sum.addAndGet(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    // Return the number of recorded values
+    public long getCount() {
+        return total.get();
+    }
+
+    // Return the largest recorded value
+    public long getMax() {
+        return max.get();
+    }
+
+    // Return the average of the recorded values, or 0 if there are none
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    // Return the value below which the given percentage (0-100) of the recorded values fall, or 0 if there are none.
+    // The result is the upper end of the bucket holding that value, so it never understates a latency.
+    public long getPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get(); // Values recorded while iterating
+    }
+
+    // Forget all recorded values
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // Return the bucket of a value: exact below 2 * SUB_BUCKETS, then SUB_BUCKETS linear steps per power of two
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // Keeps the top SUB_BUCKET_BITS + 1 bits
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Return the largest value that falls into a bucket
+    private static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long base = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+}
+
+/*
+ * Summary:
+ * The LatencyHistogram class records latencies in logarithmic buckets with linear sub-buckets, the layout used by
+ * HDR histograms. It covers every non-negative long value with a fixed array of counters and a bounded relative
+ * error, can be updated from many threads without locking, and answers percentile queries such as the 99th
+ * percentile latency of an operation.
+ */
@@ -1,9 +1,24 @@
+import java.io.BufferedReader; // Import the BufferedReader class from the java.io package
+import java.io.IOException; // Import the IOException class from the java.io package
+import java.io.InputStreamReader; // Import the InputStreamReader class from the java.io package
+import java.nio.file.Files; // Import the Files class from the java.nio.file package
+import java.nio.file.Path; // Import the Path interface from the java.nio.file package
+import java.nio.file.Paths; // Import the Paths class from the java.nio.file package
 import java.util.List; // Import the List interface from the java.util package
+import java.util.Locale; // Import the Locale class from the java.util package
 import java.util.Scanner; // Import the Scanner class from the java.util package
+import java.util.stream.Stream; // Import the Stream interface from the java.util.stream package
 
 public class Main {
 
     public static void main(String[] args) {
+        // Run a script of commands instead of the interactive menu when --batch is given
+        if (args.length > 0) {
+            int exitCode = runBatch(args);
+            FileManager.shutdown(); // System.exit would otherwise cut background deletions short
+            System.exit(exitCode);
+        }
+
         // Create a Scanner object to read user input from the console
         Scanner scanner = new Scanner(System.in);
         boolean running = true; // Boolean variable to control the main loop
@@ -19,7 +34,13 @@ public class Main {
             System.out.println("5. Create Directory");
             System.out.println("6. Delete Directory");
             System.out.println("7. Search Files");
-            System.out.println("8. Exit");
+            System.out.println("8. Build/Refresh Filename Index");
+            System.out.println("9. Copy Directory");
+            System.out.println("10. Move Directory");
+            System.out.println("11. Search File Contents");
+            System.out.println("12. Find Duplicate Files");
+            System.out.println("13. Show Operation Statistics");
+            System.out.println("14. Exit");
             System.out.print("Choose an option: ");
 
             // Read the user's choice as an integer
@@ -32,7 +53,19 @@ public class Main {
                     // Option 1: Display directory contents
                     System.out.print("Enter directory path: ");
                     String dirPath = scanner.nextLine().trim(); // Read and trim the directory path
-                    FileManager.displayDirectoryContents(dirPath); // Call the method to display directory contents
+                    System.out.print("Sort by name, size or modified (press Enter for directory order): ");
+                    DirectoryLister.SortOrder order = parseSortOrder(scanner.nextLine().trim());
+                    System.out.print("Entries per page (press Enter for all): ");
+                    int pageSize = (int) Math.min(parseLimit(scanner.nextLine().trim()), Integer.MAX_VALUE);
+                    int page = 1;
+                    if (pageSize < Integer.MAX_VALUE) {
+                        System.out.print("Page number (press Enter for 1): ");
+                        page = parsePage(scanner.nextLine().trim()); // Enter selects the first page
+                    } else {
+                        pageSize = 0; // Show everything on one page
+                    }
+                    // Call the method to display the directory contents
+                    FileManager.displayDirectoryContents(dirPath, order, page, pageSize);
                     break;
                 case 2:
                     // Option 2: Copy a file
@@ -66,7 +99,13 @@ public class Main {
                     // Option 6: Delete a directory
                     System.out.print("Enter directory path to delete: ");
                     String deleteDirPath = scanner.nextLine().trim(); // Read and trim the directory path
-                    FileManager.deleteDirectory(deleteDirPath); // Call the method to delete the directory
+                    System.out.print("Delete in the background (y/N)? ");
+                    String background = scanner.nextLine().trim(); // Read whether to return immediately
+                    if (background.equalsIgnoreCase("y")) {
+                        FileManager.deleteDirectoryInBackground(deleteDirPath); // Trash the directory and purge it later
+                    } else {
+                        FileManager.deleteDirectory(deleteDirPath); // Call the method to delete the directory
+                    }
                     break;
                 case 7:
                     // Option 7: Search for files in a directory
@@ -74,15 +113,85 @@ public class Main {
                     String searchDirPath = scanner.nextLine().trim(); // Read and trim the directory path
                     System.out.print("Enter search query: ");
                     String searchQuery = scanner.nextLine(); // Read the search query
-                    List<String> results = FileManager.searchFiles(searchDirPath, searchQuery); // Call the method to search for files
+                    System.out.print("Enter maximum number of results (blank for all): ");
+                    String maxResultsInput = scanner.nextLine().trim(); // Read the optional result limit
+                    long maxResults = parseLimit(maxResultsInput); // Convert the limit, defaulting to no limit
+                    System.out.print("Enter filters, e.g. name:*.log size:>1M newer:7d exclude:.git (blank for none): ");
+                    String filters = scanner.nextLine().trim(); // Read the optional filter expression
+                    Stream<Path> results;
+                    if (filters.isEmpty()) {
+                        // A plain name search is answered from the index built with option 8 while it is up to date
+                        results = FileManager.streamFiles(searchDirPath, searchQuery, maxResults);
+                    } else {
+                        SearchQuery query;
+                        try {
+                            // Combine the filters and the name query into one predicate evaluated during the walk
+                            query = SearchQuery.parse(filters).nameContains(searchQuery).build();
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("Invalid filter: " + e.getMessage());
+                            break;
+                        }
+                        results = FileManager.streamFiles(searchDirPath, query, maxResults);
+                    }
                     System.out.println("Search Results:");
-                    // Iterate over the list of results and print each one
-                    for (String result : results) {
-                        System.out.println(result);
+                    // Print each result as soon as it is found instead of waiting for the whole tree to be walked
+                    try (results) {
+                        results.forEach(System.out::println);
                     }
                     break;
                 case 8:
-                    // Option 8: Exit the program
+                    // Option 8: Build or refresh the filename index of a directory tree
+                    System.out.print("Enter directory path to index: ");
+                    String indexDirPath = scanner.nextLine().trim(); // Read and trim the directory path
+                    FileManager.buildIndex(indexDirPath); // Call the method to build or refresh the index
+                    break;
+                case 9:
+                    // Option 9: Copy a directory tree
+                    System.out.print("Enter source directory path: ");
+                    String sourceCopyDirPath = scanner.nextLine().trim(); // Read and trim the source directory path
+                    System.out.print("Enter destination directory path: ");
+                    String destinationCopyDirPath = scanner.nextLine().trim(); // Read and trim the destination path
+                    FileManager.copyDirectory(sourceCopyDirPath, destinationCopyDirPath); // Call the method to copy the tree
+                    break;
+                case 10:
+                    // Option 10: Move a directory tree
+                    System.out.print("Enter source directory path: ");
+                    String sourceMoveDirPath = scanner.nextLine().trim(); // Read and trim the source directory path
+                    System.out.print("Enter destination directory path: ");
+                    String destinationMoveDirPath = scanner.nextLine().trim(); // Read and trim the destination path
+                    FileManager.moveDirectory(sourceMoveDirPath, destinationMoveDirPath); // Call the method to move the tree
+                    break;
+                case 11:
+                    // Option 11: Search the contents of the files in a directory tree
+                    System.out.print("Enter directory path to search: ");
+                    String grepDirPath = scanner.nextLine().trim(); // Read and trim the directory path
+                    System.out.print("Enter text to search for: ");
+                    String grepText = scanner.nextLine(); // Read the search text, keeping leading and trailing spaces
+                    System.out.print("Enter maximum number of results (blank for all): ");
+                    long maxMatches = parseLimit(scanner.nextLine().trim()); // Convert the limit, defaulting to no limit
+                    // Print each matching line as path:line:snippet as soon as it is found
+                    FileManager.searchFileContents(grepDirPath, grepText, maxMatches);
+                    break;
+                case 12:
+                    // Option 12: Find files with identical content and optionally remove the extra copies
+                    System.out.print("Enter directory path to check for duplicates: ");
+                    String duplicatesDirPath = scanner.nextLine().trim(); // Read and trim the directory path
+                    List<DuplicateFinder.Group> duplicates = FileManager.findDuplicates(duplicatesDirPath);
+                    if (!duplicates.isEmpty()) {
+                        System.out.print("Remove duplicates: (d)elete, hard-(l)ink, or press Enter to keep them: ");
+                        String action = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+                        if (action.startsWith("d") || action.startsWith("l")) {
+                            // Keep the first file of every group and delete or hard-link the others
+                            FileManager.removeDuplicates(duplicates, action.startsWith("l"));
+                        }
+                    }
+                    break;
+                case 13:
+                    // Option 13: Print the count, errors, bytes, files and latency percentiles of every operation
+                    System.out.print(Metrics.snapshot());
+                    break;
+                case 14:
+                    // Option 14: Exit the program
                     running = false; // Set running to false to exit the loop
                     break;
                 default:
@@ -92,6 +201,92 @@ public class Main {
         }
 
         scanner.close(); // Close the scanner to release resources
+        FileManager.shutdown(); // Let directories trashed with option 6 finish purging before the program ends
+    }
+
+    // Run a batch script given as --batch <file|-> [--threads <n>]; returns the process exit code
+    private static int runBatch(String[] args) {
+        String script = null;
+        int threads = BatchRunner.DEFAULT_THREADS;
+        try {
+            // Read the command-line options
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--batch") && i + 1 < args.length) {
+                    script = args[++i];
+                } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    script = null;
+                    break;
+                }
+            }
+            if (script == null || threads < 1) {
+                System.err.println("Usage: java Main [--batch <file|-> [--threads <n>]]");
+                return 2;
+            }
+
+            // Read commands from standard input for "-", otherwise from the given file
+            BufferedReader reader = script.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in))
+                    : Files.newBufferedReader(Paths.get(script));
+            try (reader) {
+                int failed = new BatchRunner(threads).run(reader);
+                return failed == 0 ? 0 : 1; // Non-zero exit code if any command failed
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid thread count: " + e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error reading batch script: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    // Parse the sort order of a directory listing; empty or unknown input keeps the directory order
+    private static DirectoryLister.SortOrder parseSortOrder(String input) {
+        if (input.isEmpty()) {
+            return DirectoryLister.SortOrder.NONE;
+        }
+        try {
+            return DirectoryLister.SortOrder.valueOf(input.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown sort order, showing directory order.");
+            return DirectoryLister.SortOrder.NONE;
+        }
+    }
+
+    // Parse a page number entered by the user; blank or invalid input selects the first page
+    private static int parsePage(String input) {
+        if (input.isEmpty()) {
+            return 1;
+        }
+        try {
+            int page = Integer.parseInt(input);
+            if (page > 0) {
+                return page;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the message below
+        }
+        System.out.println("Invalid page, showing page 1.");
+        return 1;
+    }
+
+    // Parse a positive result limit entered by the user; blank or invalid input means no limit
+    private static long parseLimit(String input) {
+        if (input.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            long limit = Long.parseLong(input);
+            if (limit > 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the message below
+        }
+        System.out.println("Invalid limit, showing all results.");
+        return Long.MAX_VALUE;
     }
 }
 
@@ -99,7 +294,9 @@ public class Main {
  * Summary:
  * This Main class provides a command-line interface for a file management system.
  * It presents a menu with options to display directory contents, copy, move, and delete files,
- * create and delete directories, and search for files. The user interacts with the program by selecting
- * options and providing necessary inputs like file paths. The program continues to run in a loop
- * until the user chooses to exit.
+ * create, delete, copy and move directories, search for files by name or by content, find duplicate files, build a
+ * filename index that speeds up repeated searches, and show per-operation statistics.
+ * The user interacts with the program by selecting options and providing necessary inputs like file paths.
+ * The program continues to run in a loop until the user chooses to exit. Started with --batch, it instead runs a
+ * script of commands through BatchRunner.
  */
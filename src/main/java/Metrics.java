@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class Metrics {
+
+    // Logger instance to record log messages for the Metrics class
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    // JMX domain under which every operation is published, e.g. FileManager:type=Operation,name=copy
+    private static final String JMX_DOMAIN = "FileManager";
+
+    // File the snapshot is written to; can be overridden with -Dfilemanager.metrics.file=...
+    private static final Path SNAPSHOT_FILE = Paths.get(System.getProperty("filemanager.metrics.file",
+            Paths.get(System.getProperty("user.home"), ".filemanager", "metrics.txt").toString()));
+
+    // Seconds between snapshots; -Dfilemanager.metrics.interval=0 turns the snapshot file off
+    private static final long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("filemanager.metrics.interval", 60);
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Metrics of every operation that has been used, sorted by name for printing
+    private static final Map<String, OperationStats> operations = new ConcurrentSkipListMap<>();
+
+    static {
+        // Write the snapshot file periodically on a background thread that does not keep the program alive
+        if (SNAPSHOT_INTERVAL_SECONDS > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(Metrics::writeSnapshot, SNAPSHOT_INTERVAL_SECONDS,
+                    SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Return the metrics of the named operation, creating them and publishing them over JMX on first use
+    public static OperationStats operation(String name) {
+        return operations.computeIfAbsent(name, Metrics::register);
+    }
+
+    // Format the metrics of all operations as a table, one line per operation
+    public static String snapshot() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-28s %8s %7s %14s %10s %9s %9s %9s %9s %9s%n", "Operation", "Count", "Errors",
+                "Bytes", "Files", "Mean ms", "p50 ms", "p99 ms", "p99.9 ms", "Max ms"));
+        for (OperationStats stats : operations.values()) {
+            text.append(String.format("%-28s %8d %7d %14d %10d %9.2f %9.2f %9.2f %9.2f %9.2f%n", stats.getName(),
+                    stats.getCount(), stats.getErrorCount(), stats.getBytesTransferred(), stats.getFilesVisited(),
+                    stats.getMeanMillis(), stats.getP50Millis(), stats.getP99Millis(), stats.getP999Millis(),
+                    stats.getMaxMillis()));
+        }
+        return text.toString();
+    }
+
+    // Write the current snapshot to the snapshot file, replacing the previous one in a single step
+    public static void writeSnapshot() {
+        try {
+            Path directory = SNAPSHOT_FILE.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "metrics", ".tmp");
+            try {
+                String text = "Snapshot taken " + LocalDateTime.now().format(TIMESTAMP_FORMAT) + System.lineSeparator()
+                        + snapshot();
+                Files.write(temporary, text.getBytes(StandardCharsets.UTF_8));
+                Files.move(temporary, SNAPSHOT_FILE, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Metrics must never disturb the operations they measure
+            logger.log(Level.WARNING, "Failed to write metrics snapshot {0} - {1}",
+                    new Object[]{SNAPSHOT_FILE, e.getMessage()});
+        }
+    }
+
+    // Create the metrics of an operation and register them with the platform MBean server
+    private static OperationStats register(String name) {
+        OperationStats stats = new OperationStats(name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Operation,name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(stats, objectName);
+            }
+        } catch (JMException e) {
+            // The metrics still work without JMX, e.g. when the MBean server refuses the registration
+            logger.log(Level.WARNING, "Failed to publish metrics of {0} over JMX - {1}",
+                    new Object[]{name, e.getMessage()});
+        }
+        return stats;
+    }
+}
+
+/*
+ * Summary:
+ * The Metrics class is the registry of the per-operation metrics kept by FileManager. Each operation's
+ * OperationStats is published as a JMX MBean under FileManager:type=Operation,name=<operation>, so it can be
+ * watched live with JConsole or VisualVM. A background thread writes a snapshot table of all operations to a file
+ * at a fixed interval, and the same table can be printed on demand from the menu.
+ */
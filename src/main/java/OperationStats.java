@@ -0,0 +1,113 @@
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationStats implements OperationStatsMBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // Create the metrics of the operation with the given name
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    // Return the name of the operation
+    public String getName() {
+        return name;
+    }
+
+    // Record one run that started at startNanos (from System.nanoTime) and return succeeded, so an operation
+    // can end with "return stats.finish(start, succeeded, bytes, files);"
+    public boolean finish(long startNanos, boolean succeeded, long bytesTransferred, long filesVisited) {
+        latency.record(System.nanoTime() - startNanos);
+        count.increment();
+        if (!succeeded) {
+            errors.increment();
+        }
+        bytes.add(bytesTransferred);
+        files.add(filesVisited);
+        return succeeded;
+    }
+
+    // Record a run that failed before doing any work; always returns false
+    public boolean failed(long startNanos) {
+        return finish(startNanos, false, 0, 0);
+    }
+
+    // Add files visited by work that reports them as it goes, such as a parallel search
+    public void addFilesVisited(long filesVisited) {
+        files.add(filesVisited);
+    }
+
+    // The getters below are the MBean attributes; Metrics.snapshot reads the same values
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytesTransferred() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getFilesVisited() {
+        return files.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return latency.getPercentile(90) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        errors.reset();
+        bytes.reset();
+        files.reset();
+        latency.reset();
+    }
+}
+
+/*
+ * Summary:
+ * The OperationStats class collects the metrics of one FileManager operation: how often it ran and failed, how many
+ * bytes it transferred and files it visited, and a latency histogram. All counters can be updated concurrently
+ * without locking. Instances are created and published as JMX MBeans by the Metrics class.
+ */
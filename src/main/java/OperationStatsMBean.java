@@ -0,0 +1,37 @@
+// Management interface of OperationStats; JMX publishes every getter as a read-only attribute
+public interface OperationStatsMBean {
+
+    // Number of times the operation ran
+    long getCount();
+
+    // Number of runs that failed
+    long getErrorCount();
+
+    // Bytes copied or moved by the operation
+    long getBytesTransferred();
+
+    // Files and directories the operation visited, created or removed
+    long getFilesVisited();
+
+    // Latency of the operation in milliseconds
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    // Set all counters and the histogram back to zero
+    void reset();
+}
+
+/*
+ * Summary:
+ * The OperationStatsMBean interface defines what JMX clients such as JConsole or VisualVM see of the metrics of one
+ * FileManager operation: counts, errors, bytes, files and latency percentiles, plus an operation to reset them.
+ */
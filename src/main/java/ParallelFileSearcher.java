@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ParallelFileSearcher {
+
+    // Logger instance to record log messages for the ParallelFileSearcher class
+    private static final Logger logger = Logger.getLogger(ParallelFileSearcher.class.getName());
+
+    // Number of worker threads used when no explicit parallelism level is given
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Value for maxResults that means "no limit"
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    // Number of matches buffered between the walker threads and a consumer of stream()
+    private static final int STREAM_BUFFER_SIZE = 1024;
+
+    // How long a walker waits for a consumer of stream() to take anything from a full buffer before it abandons the
+    // walk; can be overridden with -Dfilemanager.search.consumerTimeoutMillis=...
+    private static final long STREAM_CONSUMER_TIMEOUT_MILLIS = Long.getLong("filemanager.search.consumerTimeoutMillis",
+            300_000);
+
+    // Marker placed in the stream buffer once the walk has finished
+    private static final Path END_OF_STREAM = Paths.get("");
+
+    // Fork-join pool that runs one task per directory and lets idle workers steal pending subdirectories
+    private final ForkJoinPool pool;
+
+    // Optional cache of directory listings; null to always read from disk
+    private final DirectoryCache cache;
+
+    // Optional metrics that receive the number of entries visited; null if not measured
+    private final OperationStats stats;
+
+    // Create a searcher that uses the default parallelism level
+    public ParallelFileSearcher() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    // Create a searcher that uses the given number of worker threads
+    public ParallelFileSearcher(int parallelism) {
+        this(parallelism, null);
+    }
+
+    // Create a searcher that uses the given number of worker threads and takes listings from the given cache
+    public ParallelFileSearcher(int parallelism, DirectoryCache cache) {
+        this(parallelism, cache, null);
+    }
+
+    // Create a searcher that also adds the number of entries it visits to the given operation metrics
+    public ParallelFileSearcher(int parallelism, DirectoryCache cache, OperationStats stats) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.cache = cache;
+        this.stats = stats;
+    }
+
+    // Return the number of worker threads used by this searcher
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // Search the tree below directoryPath for files whose name contains searchQuery.
+    // Results are returned in the same order as the sequential depth-first search in FileManager.
+    public List<String> search(String directoryPath, String searchQuery) throws IOException {
+        return search(directoryPath, SearchQuery.nameContains(searchQuery));
+    }
+
+    // Search the tree below directoryPath for entries matching query, in depth-first order.
+    // The query is evaluated on each entry as it is listed, and excluded subtrees are never listed.
+    public List<String> search(String directoryPath, SearchQuery query) throws IOException {
+        Path root = Paths.get(directoryPath);
+        // Fail fast on the root the same way the sequential search does (e.g. NotDirectoryException)
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(directoryPath);
+        }
+
+        // Walk the tree in parallel and collect the per-directory result nodes
+        Node tree = pool.invoke(new DirectoryTask(root, 0, query));
+
+        // Flatten the result tree once, instead of merging lists at every level
+        List<String> matchedFiles = new ArrayList<>();
+        flatten(tree, matchedFiles);
+        return matchedFiles;
+    }
+
+    // Search the tree below directoryPath and pass each match to onMatch as soon as it is found.
+    // Matches arrive in no particular order; onMatch is never called concurrently.
+    // The walk stops after maxResults matches or once cancelled is set. Returns the number of matches reported.
+    public long search(String directoryPath, String searchQuery, long maxResults, AtomicBoolean cancelled,
+                       Consumer<Path> onMatch) throws IOException {
+        return search(directoryPath, SearchQuery.nameContains(searchQuery), maxResults, cancelled, onMatch);
+    }
+
+    // Search the tree below directoryPath for entries matching query and pass each one to onMatch as it is found
+    public long search(String directoryPath, SearchQuery query, long maxResults, AtomicBoolean cancelled,
+                       Consumer<Path> onMatch) throws IOException {
+        Path root = Paths.get(directoryPath);
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(directoryPath);
+        }
+        StreamingContext context = new StreamingContext(query, maxResults, cancelled, onMatch);
+        pool.invoke(new StreamingTask(root, 0, context));
+        return Math.min(context.emitted.get(), maxResults);
+    }
+
+    // Return a lazy stream of matching paths that is fed by the parallel walk while it is consumed.
+    // Closing the stream, or stopping after maxResults elements, cancels the remaining walk. The caller must close
+    // the stream (e.g. with try-with-resources); a walk whose consumer takes nothing for
+    // STREAM_CONSUMER_TIMEOUT_MILLIS is abandoned, and the stream then ends after the matches already buffered.
+    public Stream<Path> stream(String directoryPath, String searchQuery, long maxResults) throws IOException {
+        return stream(directoryPath, SearchQuery.nameContains(searchQuery), maxResults);
+    }
+
+    // Return a lazy stream of the entries matching query, fed by the parallel walk while it is consumed
+    public Stream<Path> stream(String directoryPath, SearchQuery query, long maxResults) throws IOException {
+        Path root = Paths.get(directoryPath);
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(directoryPath);
+        }
+
+        // Bounded buffer so a slow consumer holds back the walker instead of filling the heap
+        BlockingQueue<Path> buffer = new ArrayBlockingQueue<>(STREAM_BUFFER_SIZE);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        StreamingContext context = new StreamingContext(query, maxResults, cancelled,
+                path -> put(buffer, path, cancelled));
+
+        // Run the walk in the background and mark the end of the results when it finishes
+        pool.execute(() -> {
+            try {
+                new StreamingTask(root, 0, context).invoke();
+            } finally {
+                put(buffer, END_OF_STREAM, cancelled);
+            }
+        });
+
+        Iterator<Path> iterator = new Iterator<>() {
+            private Path next; // Next element to return, or null if not fetched yet
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        // Wait until the walker produces a match or finishes, or until an abandoned walk is drained
+                        while ((next = buffer.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                            if (cancelled.get() && buffer.isEmpty()) {
+                                next = END_OF_STREAM;
+                                break;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt(); // Preserve the interrupt and end the stream
+                        cancelled.set(true);
+                        next = END_OF_STREAM;
+                    }
+                }
+                return next != END_OF_STREAM;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Path result = next;
+                next = null;
+                return result;
+            }
+        };
+
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    cancelled.set(true); // Stop the walker threads
+                    buffer.clear(); // Unblock any worker waiting for space in the buffer
+                });
+    }
+
+    // Shut down the worker threads; the searcher cannot be used afterwards
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Append all matches of the result tree to the output list in depth-first order
+    private static void flatten(Node root, List<String> out) {
+        // Use an explicit stack so very deep trees do not overflow the call stack
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Object item = stack.pop();
+            if (item instanceof String) {
+                out.add((String) item); // A single matching file path
+            } else {
+                // Push the children in reverse so they are popped in their original order
+                List<Object> children = ((Node) item).children;
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+    }
+
+    // Hand a path to the stream buffer, giving up if the consumer has cancelled the stream. If the consumer takes
+    // nothing for STREAM_CONSUMER_TIMEOUT_MILLIS the walk is abandoned, so a stream that is neither drained nor
+    // closed does not hold a worker thread forever.
+    private static void put(BlockingQueue<Path> buffer, Path path, AtomicBoolean cancelled) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STREAM_CONSUMER_TIMEOUT_MILLIS);
+        try {
+            while (!buffer.offer(path, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    return; // Nobody is reading any more
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    if (!cancelled.getAndSet(true)) {
+                        logger.log(Level.WARNING, "Search stream not consumed for {0} ms, abandoning the walk",
+                                STREAM_CONSUMER_TIMEOUT_MILLIS);
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        }
+    }
+
+    // Callback for the entries of one directory; returns false to stop the listing early
+    private interface EntryVisitor {
+        boolean visit(Path entry, BasicFileAttributes attrs);
+    }
+
+    // Pass every entry of a directory and its attributes (null if unreadable) to the visitor
+    private void forEachEntry(Path directory, EntryVisitor visitor) throws IOException {
+        int visited = 0; // Entries passed to the visitor, added to the metrics once per directory
+        try {
+            // Listings and attributes come from memory when the directory is cached; a walk never fills the cache
+            List<DirectoryCache.Entry> cached = cache == null ? null : cache.peek(directory);
+            if (cached != null) {
+                for (DirectoryCache.Entry entry : cached) {
+                    visited++;
+                    if (!visitor.visit(entry.getPath(), entry.getAttributes())) {
+                        return;
+                    }
+                }
+                return;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    visited++;
+                    // Read the attributes once per entry and reuse them instead of issuing further stat calls
+                    if (!visitor.visit(entry, readAttributes(entry))) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            if (stats != null) {
+                stats.addFilesVisited(visited);
+            }
+        }
+    }
+
+    // Read the attributes of an entry, following symbolic links like Files.isDirectory does
+    private static BasicFileAttributes readAttributes(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null; // Treat unreadable entries (e.g. broken links) as regular files, like Files.isDirectory
+        }
+    }
+
+    // Report a directory that could not be listed; the search continues with the rest of the tree
+    private static void reportFailure(Path directory, Exception e) {
+        String message = e instanceof DirectoryIteratorException ? e.getCause().getMessage() : e.getMessage();
+        System.err.println("Error searching files: " + message);
+        logger.log(Level.SEVERE, "Failed to search files in directory {0} - {1}", new Object[]{directory, message});
+    }
+
+    // Result of searching one directory: matching paths (String) and subdirectory results (Node), in listing order
+    private static final class Node {
+        final List<Object> children = new ArrayList<>();
+    }
+
+    // Fork-join task that lists one directory and forks a subtask for each subdirectory
+    private final class DirectoryTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final int depth; // Depth of the directory below the root; the root is at depth 0
+        private final SearchQuery query;
+
+        DirectoryTask(Path directory, int depth, SearchQuery query) {
+            this.directory = directory;
+            this.depth = depth;
+            this.query = query;
+        }
+
+        @Override
+        protected Node compute() {
+            Node node = new Node();
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>(); // Position of each subtask result within node.children
+
+            try {
+                forEachEntry(directory, (entry, attrs) -> {
+                    if (query.matches(entry, attrs, depth + 1)) {
+                        node.children.add(entry.toString()); // Record the matching path, before its subtree
+                    }
+                    if (attrs != null && attrs.isDirectory() && query.descendInto(entry, depth + 1)) {
+                        // Fork the subdirectory so an idle worker can steal it
+                        DirectoryTask subtask = new DirectoryTask(entry, depth + 1, query);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                        slots.add(node.children.size());
+                        node.children.add(null); // Placeholder, filled in once the subtask is joined
+                    }
+                    return true;
+                });
+            } catch (IOException | DirectoryIteratorException e) {
+                // Report the failure and keep whatever was found so far, like the sequential search
+                reportFailure(directory, e);
+            }
+
+            // Join the subtasks and put their results in the slots reserved for them
+            for (int i = 0; i < subtasks.size(); i++) {
+                node.children.set(slots.get(i), subtasks.get(i).join());
+            }
+            return node;
+        }
+    }
+
+    // Shared state of a streaming search: the query, the result limit and the cancellation flag
+    private static final class StreamingContext {
+        final SearchQuery query;
+        final long maxResults;
+        final AtomicBoolean cancelled;
+        final Consumer<Path> onMatch;
+        final AtomicLong emitted = new AtomicLong();
+        volatile boolean limitReached;
+
+        StreamingContext(SearchQuery query, long maxResults, AtomicBoolean cancelled, Consumer<Path> onMatch) {
+            if (maxResults < 1) {
+                throw new IllegalArgumentException("maxResults must be at least 1: " + maxResults);
+            }
+            this.query = query;
+            this.maxResults = maxResults;
+            this.cancelled = cancelled;
+            this.onMatch = onMatch;
+        }
+
+        // Check whether the walk should stop early
+        boolean stopped() {
+            return limitReached || cancelled.get();
+        }
+
+        // Report a match unless the limit has already been reached
+        void emit(Path path) {
+            long count = emitted.incrementAndGet();
+            if (count > maxResults) {
+                limitReached = true;
+                return;
+            }
+            synchronized (this) {
+                if (!cancelled.get()) {
+                    onMatch.accept(path); // Serialized so the consumer does not need to be thread-safe
+                }
+            }
+            if (count == maxResults) {
+                limitReached = true; // Stop listing further directories
+            }
+        }
+    }
+
+    // Fork-join task that lists one directory, reports matches immediately and forks subdirectories
+    private final class StreamingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final int depth; // Depth of the directory below the root; the root is at depth 0
+        private final StreamingContext context;
+
+        StreamingTask(Path directory, int depth, StreamingContext context) {
+            this.directory = directory;
+            this.depth = depth;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            if (context.stopped()) {
+                return; // Skip directories once the limit is reached or the search is cancelled
+            }
+            List<StreamingTask> subtasks = new ArrayList<>();
+            try {
+                forEachEntry(directory, (entry, attrs) -> {
+                    if (context.query.matches(entry, attrs, depth + 1)) {
+                        context.emit(entry);
+                    }
+                    if (attrs != null && attrs.isDirectory() && context.query.descendInto(entry, depth + 1)) {
+                        StreamingTask subtask = new StreamingTask(entry, depth + 1, context);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                    return !context.stopped(); // Stop listing once the limit is reached or the search is cancelled
+                });
+            } catch (IOException | DirectoryIteratorException e) {
+                reportFailure(directory, e);
+            }
+            for (StreamingTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The ParallelFileSearcher class implements a parallel, work-stealing version of FileManager.searchFiles.
+ * Each directory is listed by its own fork-join task and every subdirectory is forked as a new task,
+ * so idle worker threads steal pending subtrees. Entry types are taken from a single attribute read
+ * per entry, and results are assembled in a tree that is flattened once at the end, which keeps the
+ * output identical to the sequential depth-first search.
+ * A streaming variant reports matches as soon as they are found, either to a callback or through a lazy
+ * Stream, and supports a result limit (1 for first-match-only) and cancellation. The Stream must be closed;
+ * a walk whose consumer stops reading without closing it is abandoned after a timeout.
+ * Besides a plain name substring, searches accept a SearchQuery with glob, regex, size, time, type and depth
+ * conditions; it is evaluated on the attributes read during the walk, and excluded subtrees are never listed.
+ * When a DirectoryCache is supplied, listings and entry attributes are taken from memory where possible.
+ */
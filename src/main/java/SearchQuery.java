@@ -0,0 +1,490 @@
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+public class SearchQuery {
+
+    // Kinds of entries a query can match
+    public enum Type {
+        FILE, // Everything that is not a directory, as in the original filename search
+        DIRECTORY,
+        ANY
+    }
+
+    // Condition on an entry's attributes and depth, checked before its name is looked at
+    private interface AttributeCondition {
+        boolean test(BasicFileAttributes attributes, int depth);
+    }
+
+    private final String description; // Readable form of the query, for messages and logs
+    private final AttributeCondition[] attributeConditions; // Cheap checks, in the order they are evaluated
+    private final List<Predicate<String>> nameConditions; // Name checks, cheapest first
+    private final List<Predicate<String>> exclusions; // Names of directories whose subtrees are skipped
+    private final int maxDepth;
+
+    private SearchQuery(Builder builder) {
+        this.description = builder.description.length() == 0 ? "(all files)" : builder.description.toString().trim();
+        List<AttributeCondition> attributes = new ArrayList<>();
+        // The type check is a flag test, so it goes first; size and time checks need only the attributes at hand
+        Type type = builder.type;
+        if (type != Type.ANY) {
+            boolean wantDirectory = type == Type.DIRECTORY;
+            attributes.add((attrs, depth) -> (attrs != null && attrs.isDirectory()) == wantDirectory);
+        }
+        int minDepth = builder.minDepth;
+        if (minDepth > 1) {
+            attributes.add((attrs, depth) -> depth >= minDepth);
+        }
+        long minSize = builder.minSize;
+        long maxSize = builder.maxSize;
+        if (minSize > 0 || maxSize < Long.MAX_VALUE) {
+            attributes.add((attrs, depth) -> attrs != null && attrs.size() >= minSize && attrs.size() <= maxSize);
+        }
+        long modifiedFrom = builder.modifiedFrom;
+        long modifiedTo = builder.modifiedTo;
+        if (modifiedFrom > Long.MIN_VALUE || modifiedTo < Long.MAX_VALUE) {
+            attributes.add((attrs, depth) -> {
+                if (attrs == null) {
+                    return false;
+                }
+                long modified = attrs.lastModifiedTime().toMillis();
+                return modified >= modifiedFrom && modified < modifiedTo;
+            });
+        }
+        this.attributeConditions = attributes.toArray(new AttributeCondition[0]);
+        this.nameConditions = sortedByCost(builder.nameConditions);
+        this.exclusions = sortedByCost(builder.exclusions);
+        this.maxDepth = builder.maxDepth;
+    }
+
+    // Return a query that matches files whose name contains text, like the original filename search
+    public static SearchQuery nameContains(String text) {
+        return builder().nameContains(text).build();
+    }
+
+    // Return an empty builder, which matches every file
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Return a builder filled from a query expression made of space-separated terms:
+    //   name:<glob>            file name matches a glob, e.g. name:*.log or name:report-????.{csv,txt}
+    //   regex:<pattern>        file name matches a regular expression
+    //   contains:<text>        file name contains text; a term without a prefix means the same
+    //   size:<range>           size in bytes with optional K, M or G suffix: size:>1M, size:<10K, size:1K..1M
+    //   newer:<age|date>       modified within an age (30m, 12h, 7d) or on or after a date (2024-01-31)
+    //   older:<age|date>       modified longer ago than an age, or before a date
+    //   type:<file|dir|any>    kind of entry to report (default file)
+    //   depth:<n> mindepth:<n> deepest and shallowest level searched; entries in the root are at depth 1
+    //   exclude:<names>        comma-separated directory names or globs whose subtrees are skipped
+    public static Builder parse(String expression) {
+        Builder builder = new Builder();
+        for (String term : expression.trim().split("\\s+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            int colon = term.indexOf(':');
+            String key = colon < 0 ? "contains" : term.substring(0, colon).toLowerCase(Locale.ROOT);
+            String value = colon < 0 ? term : term.substring(colon + 1);
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("Missing value in query term: " + term);
+            }
+            switch (key) {
+                case "name":
+                    builder.nameGlob(value);
+                    break;
+                case "regex":
+                    builder.nameRegex(value);
+                    break;
+                case "contains":
+                    builder.nameContains(value);
+                    break;
+                case "size":
+                    parseSize(builder, value);
+                    break;
+                case "newer":
+                    builder.modifiedAfter(parseTime(value));
+                    break;
+                case "older":
+                    builder.modifiedBefore(parseTime(value));
+                    break;
+                case "type":
+                    builder.type(parseType(value));
+                    break;
+                case "depth":
+                case "maxdepth":
+                    builder.maxDepth(parseInt(value, term));
+                    break;
+                case "mindepth":
+                    builder.minDepth(parseInt(value, term));
+                    break;
+                case "exclude":
+                    for (String name : value.split(",")) {
+                        if (!name.isEmpty()) {
+                            builder.excludeDirectory(name);
+                        }
+                    }
+                    break;
+                default:
+                    // Not a known key, so the colon is part of a name to look for
+                    builder.nameContains(term);
+            }
+        }
+        return builder;
+    }
+
+    // Check whether an entry at the given depth is a result; attributes may be null if they could not be read.
+    // Attribute checks run first, and the name is only converted to a string if they all pass.
+    public boolean matches(Path entry, BasicFileAttributes attributes, int depth) {
+        if (depth > maxDepth) {
+            return false;
+        }
+        for (AttributeCondition condition : attributeConditions) {
+            if (!condition.test(attributes, depth)) {
+                return false;
+            }
+        }
+        if (nameConditions.isEmpty()) {
+            return true;
+        }
+        String name = entry.getFileName().toString();
+        for (Predicate<String> condition : nameConditions) {
+            if (!condition.test(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Check whether the walk should list a directory found at the given depth. Excluded directories and
+    // directories at the depth limit are pruned, so nothing below them is read.
+    public boolean descendInto(Path directory, int depth) {
+        if (depth >= maxDepth) {
+            return false;
+        }
+        if (!exclusions.isEmpty()) {
+            String name = directory.getFileName().toString();
+            for (Predicate<String> exclusion : exclusions) {
+                if (exclusion.test(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Return the query in readable form
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    // Builds a SearchQuery; every condition that is set must hold for an entry to match
+    public static final class Builder {
+        private final StringBuilder description = new StringBuilder();
+        private final List<CostedPredicate> nameConditions = new ArrayList<>();
+        private final List<CostedPredicate> exclusions = new ArrayList<>();
+        private Type type = Type.FILE;
+        private long minSize = 0;
+        private long maxSize = Long.MAX_VALUE;
+        private long modifiedFrom = Long.MIN_VALUE; // Inclusive, milliseconds since the epoch
+        private long modifiedTo = Long.MAX_VALUE; // Exclusive
+        private int minDepth = 1;
+        private int maxDepth = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        // Match names that contain text
+        public Builder nameContains(String text) {
+            if (!text.isEmpty()) {
+                nameConditions.add(new CostedPredicate(1, name -> name.contains(text)));
+                describe("contains:" + text);
+            }
+            return this;
+        }
+
+        // Match names against a glob pattern (*, ?, [...] and {a,b})
+        public Builder nameGlob(String glob) {
+            nameConditions.add(compileGlob(glob));
+            describe("name:" + glob);
+            return this;
+        }
+
+        // Match names against a regular expression; the whole name must match
+        public Builder nameRegex(String regex) {
+            Pattern pattern = Pattern.compile(regex);
+            nameConditions.add(new CostedPredicate(3, name -> pattern.matcher(name).matches()));
+            describe("regex:" + regex);
+            return this;
+        }
+
+        // Match entries of at least this many bytes
+        public Builder minSize(long bytes) {
+            minSize = Math.max(minSize, bytes);
+            describe("size>=" + bytes);
+            return this;
+        }
+
+        // Match entries of at most this many bytes
+        public Builder maxSize(long bytes) {
+            maxSize = Math.min(maxSize, bytes);
+            describe("size<=" + bytes);
+            return this;
+        }
+
+        // Match entries modified at or after the given time
+        public Builder modifiedAfter(Instant time) {
+            modifiedFrom = Math.max(modifiedFrom, time.toEpochMilli());
+            describe("newer:" + time);
+            return this;
+        }
+
+        // Match entries modified before the given time
+        public Builder modifiedBefore(Instant time) {
+            modifiedTo = Math.min(modifiedTo, time.toEpochMilli());
+            describe("older:" + time);
+            return this;
+        }
+
+        // Match only entries of the given kind
+        public Builder type(Type type) {
+            this.type = Objects.requireNonNull(type);
+            describe("type:" + type.name().toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        // Match only entries at least this deep; entries directly in the root are at depth 1
+        public Builder minDepth(int depth) {
+            minDepth = depth;
+            describe("mindepth:" + depth);
+            return this;
+        }
+
+        // Do not match or walk below this depth
+        public Builder maxDepth(int depth) {
+            if (depth < 1) {
+                throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+            }
+            maxDepth = depth;
+            describe("depth:" + depth);
+            return this;
+        }
+
+        // Skip the whole subtree of every directory with this name, or whose name matches this glob
+        public Builder excludeDirectory(String nameOrGlob) {
+            exclusions.add(compileGlob(nameOrGlob));
+            describe("exclude:" + nameOrGlob);
+            return this;
+        }
+
+        // Compile the conditions into a query
+        public SearchQuery build() {
+            return new SearchQuery(this);
+        }
+
+        private void describe(String term) {
+            description.append(' ').append(term);
+        }
+    }
+
+    // Name predicate with a rough cost, used to evaluate cheap predicates first
+    private static final class CostedPredicate {
+        final int cost;
+        final Predicate<String> predicate;
+
+        CostedPredicate(int cost, Predicate<String> predicate) {
+            this.cost = cost;
+            this.predicate = predicate;
+        }
+    }
+
+    // Order predicates by cost; the sort is stable, so equal costs keep the order they were added in
+    private static List<Predicate<String>> sortedByCost(List<CostedPredicate> predicates) {
+        List<CostedPredicate> sorted = new ArrayList<>(predicates);
+        sorted.sort(Comparator.comparingInt(predicate -> predicate.cost));
+        List<Predicate<String>> result = new ArrayList<>(sorted.size());
+        for (CostedPredicate costed : sorted) {
+            result.add(costed.predicate);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    // Compile a glob; common shapes (exact name, *suffix, prefix*) become plain string tests instead of a regex
+    private static CostedPredicate compileGlob(String glob) {
+        int lastStar = glob.lastIndexOf('*');
+        boolean onlyStars = glob.chars().noneMatch(c -> c == '?' || c == '[' || c == '{' || c == '\\');
+        if (onlyStars && lastStar < 0) {
+            return new CostedPredicate(0, name -> name.equals(glob));
+        }
+        if (onlyStars && lastStar == 0 && glob.indexOf('*', 1) < 0) {
+            String suffix = glob.substring(1);
+            return new CostedPredicate(0, name -> name.endsWith(suffix));
+        }
+        if (onlyStars && lastStar == glob.length() - 1 && glob.indexOf('*') == lastStar) {
+            String prefix = glob.substring(0, lastStar);
+            return new CostedPredicate(0, name -> name.startsWith(prefix));
+        }
+        Pattern pattern = Pattern.compile(globToRegex(glob));
+        return new CostedPredicate(2, name -> pattern.matcher(name).matches());
+    }
+
+    // Translate a file name glob into an equivalent regular expression
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false; // Inside {a,b}
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unclosed [ in glob: " + glob);
+                    }
+                    String set = glob.substring(i + 1, end);
+                    regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                    i = end;
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new IllegalArgumentException("Nested { in glob: " + glob);
+                    }
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                    break;
+                default:
+                    regex.append(Character.isLetterOrDigit(c) ? String.valueOf(c) : Pattern.quote(String.valueOf(c)));
+            }
+        }
+        if (inGroup) {
+            throw new IllegalArgumentException("Unclosed { in glob: " + glob);
+        }
+        return regex.toString();
+    }
+
+    // Parse a size range: >n, >=n, <n, <=n, n..m or an exact n
+    private static void parseSize(Builder builder, String value) {
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            builder.minSize(parseBytes(value.substring(0, range)));
+            builder.maxSize(parseBytes(value.substring(range + 2)));
+        } else if (value.startsWith(">=")) {
+            builder.minSize(parseBytes(value.substring(2)));
+        } else if (value.startsWith(">")) {
+            builder.minSize(parseBytes(value.substring(1)) + 1);
+        } else if (value.startsWith("<=")) {
+            builder.maxSize(parseBytes(value.substring(2)));
+        } else if (value.startsWith("<")) {
+            builder.maxSize(parseBytes(value.substring(1)) - 1);
+        } else {
+            long bytes = parseBytes(value);
+            builder.minSize(bytes).maxSize(bytes);
+        }
+    }
+
+    // Parse a byte count with an optional K, M or G suffix (powers of 1024)
+    private static long parseBytes(String value) {
+        String number = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (number.endsWith("B")) {
+            number = number.substring(0, number.length() - 1);
+        }
+        if (number.endsWith("K")) {
+            unit = 1024L;
+        } else if (number.endsWith("M")) {
+            unit = 1024L * 1024;
+        } else if (number.endsWith("G")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            number = number.substring(0, number.length() - 1);
+        }
+        try {
+            return Math.round(Double.parseDouble(number) * unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+    }
+
+    // Parse an age such as 30m, 12h or 7d (counted back from now), or a date such as 2024-01-31 (local midnight)
+    private static Instant parseTime(String value) {
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (unit == 'm' || unit == 'h' || unit == 'd' || unit == 'w') {
+            try {
+                long amount = Long.parseLong(value.substring(0, value.length() - 1));
+                Duration age = unit == 'm' ? Duration.ofMinutes(amount) : unit == 'h' ? Duration.ofHours(amount)
+                        : Duration.ofDays(unit == 'w' ? amount * 7 : amount);
+                return Instant.now().minus(age);
+            } catch (NumberFormatException e) {
+                // Not an age; try it as a date below
+            }
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid age or date: " + value);
+        }
+    }
+
+    // Parse an entry type
+    private static Type parseType(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "f":
+            case "file":
+                return Type.FILE;
+            case "d":
+            case "dir":
+            case "directory":
+                return Type.DIRECTORY;
+            case "any":
+                return Type.ANY;
+            default:
+                throw new IllegalArgumentException("Invalid type: " + value);
+        }
+    }
+
+    // Parse a whole number in a query term
+    private static int parseInt(String value, String term) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in query term: " + term);
+        }
+    }
+}
+
+/*
+ * Summary:
+ * The SearchQuery class describes which entries a file search reports: name conditions (substring, glob and
+ * regular expression), size and modification time ranges, entry type and depth limits, plus directory names whose
+ * subtrees are skipped. A query is built through a Builder or parsed from a short expression such as
+ * "name:*.log size:>1M newer:7d exclude:.git,node_modules". Building compiles the conditions into lists ordered
+ * by cost: flag and number checks on the attributes the walker already read come first, then simple string tests,
+ * and regular expressions last, so most entries are rejected without converting their name to a string.
+ * ParallelFileSearcher evaluates the query during the walk and prunes excluded subtrees before listing them.
+ */